@@ -0,0 +1,41 @@
+package andrew.cmu.edu.abhineec;
+
+import java.math.BigInteger;
+
+/******************************************************************************
+ * ArrayKnapsackSequence is a KnapsackSequence backed by a BigInteger array
+ ******************************************************************************/
+final class ArrayKnapsackSequence implements KnapsackSequence {
+    private final BigInteger[] elements;
+
+    /**
+     * Initialize an ArrayKnapsackSequence over elements
+     * @precondition
+     *   elements is not modified afterwards
+     **/
+    ArrayKnapsackSequence(BigInteger[] elements){
+        this.elements = elements;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public int size(){
+        return elements.length;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public BigInteger get(int index){
+        return elements[index];
+    }
+}
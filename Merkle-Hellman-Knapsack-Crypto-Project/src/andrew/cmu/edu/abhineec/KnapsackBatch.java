@@ -0,0 +1,287 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/******************************************************************************
+ * KnapsackBatch is the non-interactive command line of the cryptosystem, for bulk jobs:
+ *
+ *   keygen  --key keyFile [--size n] [--force]
+ *   encrypt --key keyFile --in inputFile --out outputFile [--lines | --binary]
+ *   decrypt --key keyFile --in inputFile --out outputFile [--lines | --binary]
+ *
+ * keygen writes a fresh key pair of n (default 641) elements with KnapsackKeyFile, refusing
+ * to replace an existing key file unless --force is given.
+ * In --lines mode (the default) every line of the input is a record: encrypt turns the UTF-8
+ * bytes of a line into a line of space separated decimal cipher values and decrypt turns such
+ * a line back, skipping blank lines, which encrypt never writes. In --binary mode the whole
+ * input is one stream of bytes, encrypted into the wire format of KnapsackCipherText by a
+ * KnapsackOutputStream and decrypted by a KnapsackInputStream; its records are the cipher blocks. All files are read and written through buffers and the
+ * records per second and MB (of plain text) per second are printed at the end.
+ * MerkleHellmanKnapsackCryptosystem.main runs KnapsackBatch when it is given arguments
+ ******************************************************************************/
+public class KnapsackBatch {
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int DEFAULT_KEY_SIZE = 641;
+    private static final String USAGE =
+            "Usage: java andrew.cmu.edu.abhineec.KnapsackBatch keygen --key keyFile [--size n] [--force]\n"
+            + "       java andrew.cmu.edu.abhineec.KnapsackBatch (encrypt | decrypt) --key keyFile --in inputFile"
+            + " --out outputFile [--lines | --binary]";
+
+    /**
+     * Method used to run a command of the command line
+     * @return
+     *   the exit status: 0 on success, 1 when the command failed, 2 when the arguments are invalid
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)   [m being the bytes of the input]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(m * n)
+     */
+    public static int run(String[] args, PrintStream report){
+        String command = args.length > 0 ? args[0] : "";
+        Path key = null, input = null, output = null;
+        int size = DEFAULT_KEY_SIZE;
+        boolean lines = true;
+        boolean force = false;
+        try{
+            for(int i=1; i<args.length; i++){
+                switch(args[i]){
+                    case "--key": key = Paths.get(value(args, ++i)); break;
+                    case "--in": input = Paths.get(value(args, ++i)); break;
+                    case "--out": output = Paths.get(value(args, ++i)); break;
+                    case "--size": size = Integer.parseInt(value(args, ++i)); break;
+                    case "--lines": lines = true; break;
+                    case "--binary": lines = false; break;
+                    case "--force": force = true; break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if(key == null || (!command.equals("keygen") && (input == null || output == null)))
+                throw new IllegalArgumentException("Missing --key, --in or --out");
+        }
+        catch(IllegalArgumentException invalid){
+            report.println(invalid.getMessage());
+            report.println(USAGE);
+            return 2;
+        }
+        try{
+            long start = System.nanoTime();
+            switch(command){
+                case "keygen":
+                    //checked before generating, which takes far longer than writing
+                    if(!force && Files.exists(key)){
+                        report.println("keygen failed: " + key + " already exists, use --force to replace it");
+                        return 1;
+                    }
+                    KnapsackKeyFile.write(key, MerkleHellmanKnapsackCryptosystem.generateKeys(size));
+                    report.printf("Wrote a %d element key pair to %s in %.1f ms%n", size, key, (System.nanoTime() - start) / 1e6);
+                    return 0;
+                case "encrypt":
+                case "decrypt":
+                    boolean encrypt = command.equals("encrypt");
+                    long[] counts;
+                    if(encrypt){
+                        //a job that only encrypts needs the public key only
+                        KnapsackPublicKey publicKey = KnapsackKeyFile.loadPublicKey(key);
+                        counts = lines ? encryptLines(publicKey, input, output) : encryptBinary(publicKey, input, output);
+                    }
+                    else{
+                        KnapsackPrivateKey privateKey = KnapsackKeyFile.load(key).getPrivateKey();
+                        counts = lines ? decryptLines(privateKey, input, output) : decryptBinary(privateKey, input, output);
+                    }
+                    double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+                    report.printf("%sed %d records (%d bytes) in %.3f s: %.0f records/sec, %.2f MB/sec%n",
+                            encrypt ? "Encrypt" : "Decrypt", counts[0], counts[1], seconds,
+                            counts[0] / seconds, counts[1] / seconds / 1e6);
+                    return 0;
+                default:
+                    report.println("Unknown command: " + command);
+                    report.println(USAGE);
+                    return 2;
+            }
+        }
+        catch(Exception failure){
+            report.println(command + " failed: " + failure);
+            return 1;
+        }
+    }
+
+    /**
+     * Main function running the command given by args and exiting with its status
+     **/
+    public static void main(String[] args){
+        int status = run(args, System.out);
+        if(status != 0)
+            System.exit(status);
+    }
+
+    /**
+     * Helper function encrypting every line of in into a line of decimal cipher values in out
+     * @return
+     *   the number of records (lines) and of plain text bytes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    private static long[] encryptLines(KnapsackPublicKey key, Path in, Path out) throws IOException {
+        long records = 0, bytes = 0;
+        try(BufferedReader reader = Files.newBufferedReader(in, StandardCharsets.UTF_8);
+            BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)){
+            StringBuilder cipherLine = new StringBuilder();
+            String line;
+            while((line = reader.readLine()) != null){
+                byte[] record = line.getBytes(StandardCharsets.UTF_8);
+                cipherLine.setLength(0);
+                for(BigInteger cipherValue: key.encrypt(record)){
+                    if(cipherLine.length() > 0)
+                        cipherLine.append(' ');
+                    cipherLine.append(cipherValue);
+                }
+                writer.append(cipherLine).append('\n');
+                records++;
+                bytes += record.length;
+            }
+        }
+        return new long[]{records, bytes};
+    }
+
+    /**
+     * Helper function decrypting every line of decimal cipher values of in into a line of out,
+     * skipping blank lines
+     * @return
+     *   the number of records (lines) and of plain text bytes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    private static long[] decryptLines(KnapsackPrivateKey key, Path in, Path out) throws IOException {
+        long records = 0, bytes = 0;
+        try(BufferedReader reader = Files.newBufferedReader(in, StandardCharsets.UTF_8);
+            BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)){
+            List<BigInteger> cipherBlocks = new ArrayList<BigInteger>();
+            String line;
+            for(long lineNumber=1; (line = reader.readLine()) != null; lineNumber++){
+                line = line.trim();
+                if(line.isEmpty())
+                    continue;
+                byte[] record;
+                try{
+                    cipherBlocks.clear();
+                    for(String cipherValue: line.split(" +"))
+                        cipherBlocks.add(new BigInteger(cipherValue));
+                    record = key.decrypt(cipherBlocks);
+                }
+                catch(IllegalArgumentException invalid){
+                    //NumberFormatException included
+                    throw new IOException("Line " + lineNumber + " of " + in + " is not a cipher text: "
+                            + invalid.getMessage(), invalid);
+                }
+                writer.write(new String(record, StandardCharsets.UTF_8));
+                writer.write('\n');
+                records++;
+                bytes += record.length;
+            }
+        }
+        return new long[]{records, bytes};
+    }
+
+    /**
+     * Helper function encrypting all of in into the wire format of KnapsackCipherText in out
+     * @return
+     *   the number of records (cipher blocks) and of plain text bytes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    private static long[] encryptBinary(KnapsackPublicKey key, Path in, Path out) throws IOException {
+        long bytes;
+        try(InputStream plainText = new BufferedInputStream(Files.newInputStream(in), BUFFER_BYTES);
+            OutputStream cipherText = new KnapsackOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(out), BUFFER_BYTES), key)){
+            bytes = copy(plainText, cipherText);
+        }
+        return new long[]{bytes / key.getBlockSize() + 1, bytes};
+    }
+
+    /**
+     * Helper function decrypting the wire format of KnapsackCipherText in in into out
+     * @return
+     *   the number of records (cipher blocks) and of plain text bytes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    private static long[] decryptBinary(KnapsackPrivateKey key, Path in, Path out) throws IOException {
+        long bytes;
+        try(InputStream plainText = new KnapsackInputStream(
+                    new BufferedInputStream(Files.newInputStream(in), BUFFER_BYTES), key);
+            OutputStream target = new BufferedOutputStream(Files.newOutputStream(out), BUFFER_BYTES)){
+            bytes = copy(plainText, target);
+        }
+        return new long[]{bytes / (key.getSize() / 8) + 1, bytes};
+    }
+
+    /**
+     * Helper function copying in to out
+     * @return
+     *   the number of bytes copied
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_BYTES];
+        long total = 0;
+        int read;
+        while((read = in.read(buffer)) > 0){
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Helper function returning the value following an option
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static String value(String[] args, int index){
+        if(index >= args.length)
+            throw new IllegalArgumentException("Missing value of " + args[index - 1]);
+        return args[index];
+    }
+}
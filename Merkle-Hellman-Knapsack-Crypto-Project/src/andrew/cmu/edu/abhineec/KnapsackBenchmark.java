@@ -0,0 +1,401 @@
+package andrew.cmu.edu.abhineec;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/******************************************************************************
+ * KnapsackBenchmark runs the benchmarks of the MerkleHellmanKnapsackCryptosystem,
+ * printing one report per section:
+ *
+ *   - encryption and decryption at several key sizes, next to the former SinglyLinkedList
+ *     backed keys (every element reached through getObjectAt(index)) and table driven encryption
+ *   - the latency of decrypting a single character, next to the r.modInverse(q) decrypt
+ *     used to recompute on every call
+ *   - the size and round trip time of cipher texts as decimal strings and in the binary
+ *     wire format of KnapsackCipherText
+ *   - the throughput of short records encrypted and decrypted one call at a time and
+ *     with encryptAll/decryptAll
+ *   - the latency of a session key pair from generateKeys and from a KnapsackKeyPool
+ *   - the time generateKeys takes for large knapsacks on a single thread and on all processors
+ ******************************************************************************/
+public class KnapsackBenchmark {
+    private static final int[] KEY_SIZES = {641, 4096, 16384};
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ENCRYPTION_TABLE_BUDGET_BYTES = 512L * 1024 * 1024;
+    private static final int LATENCY_SAMPLES = 2000;
+    private static final int[] KEY_GENERATION_SIZES = {8192, 16384, 32768, 65536};
+    private static final int WIRE_FORMAT_BLOCKS = 64;
+    private static final int BATCH_RECORDS = 20000;
+    private static final int BATCH_RECORD_LENGTH = 16;
+    private static final int SESSION_KEY_SIZE = 641;
+    private static final int SESSIONS = 64;
+
+    /**
+     * Helper function to create a super increasing sequence of BigIntegers
+     * the same way the driver code of MerkleHellmanKnapsackCryptosystem does
+     * @return
+     *   an array holding size elements, each larger than the sum of all elements before it
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static BigInteger[] superIncreasingSequence(int size, Random random){
+        BigInteger[] sequence = new BigInteger[size];
+        BigInteger prevSum = BigInteger.valueOf(1234567623);
+        for(int i=0; i<size; i++){
+            sequence[i] = prevSum;
+            BigInteger added = prevSum.add(BigInteger.valueOf(random.nextInt(1000000) + 1));
+            prevSum = prevSum.add(added);
+        }
+        return sequence;
+    }
+
+    /**
+     * Helper function to create a printable message that fills the whole knapsack (less the padding byte)
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static String message(int length, Random random){
+        StringBuilder message = new StringBuilder();
+        for(int i=0; i<length; i++)
+            message.append((char) ('a' + random.nextInt(26)));
+        return message.toString();
+    }
+
+    /**
+     * Encryption as it was done with b held in a SinglyLinkedList,
+     * walking the list from its head for every bit of the message
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n^2)
+            Big-Omega: Ω(n^2)
+            Big-Theta: Θ(n^2)
+     */
+    private static BigInteger linkedListEncrypt(SinglyLinkedList b, boolean[] bits){
+        BigInteger cipherVal = BigInteger.valueOf(0);
+        for(int index=0; index<bits.length; index++){
+            BigInteger bi = (BigInteger) b.getObjectAt(index);
+            if(bits[index])
+                cipherVal = cipherVal.add(bi);
+        }
+        return cipherVal;
+    }
+
+    /**
+     * Greedy decomposition as it was done with w held in a SinglyLinkedList,
+     * walking the list from its head for every element of the knapsack
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n^2)
+            Big-Omega: Ω(n^2)
+            Big-Theta: Θ(n^2)
+     */
+    private static int linkedListGreedyDecompose(SinglyLinkedList w, BigInteger sum, int length){
+        int count = 0;
+        for(int tailIndex=length-1; tailIndex>=0 && sum.signum()!=0; tailIndex--){
+            BigInteger wi = (BigInteger) w.getObjectAt(tailIndex);
+            if(sum.compareTo(wi)>=0){
+                sum = sum.subtract(wi);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Helper function returning the median time (in microseconds) of decrypting a single character
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(s log s)   [s being LATENCY_SAMPLES]
+            Big-Omega: Ω(s log s)
+            Big-Theta: Θ(s log s)
+     */
+    private static double medianDecryptMicros(MerkleHellmanKnapsackCryptosystem cryptosystem){
+        String cipherText = cryptosystem.encrypt("a");
+        long[] samples = new long[LATENCY_SAMPLES];
+        for(int i=0; i<LATENCY_SAMPLES; i++){
+            long start = System.nanoTime();
+            cryptosystem.decrypt(cipherText);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[LATENCY_SAMPLES / 2] / 1e3;
+    }
+
+    /**
+     * Helper function returning the median time (in microseconds) of r.modInverse(q) on the
+     * r and q of the private key, the inversion decrypt used to repeat on every call
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(s log s)   [s being LATENCY_SAMPLES]
+            Big-Omega: Ω(s log s)
+            Big-Theta: Θ(s log s)
+     */
+    private static double medianModInverseMicros(MerkleHellmanKnapsackCryptosystem cryptosystem){
+        KnapsackPrivateKey privateKey = cryptosystem.getPrivateKey();
+        BigInteger r = privateKey.getR();
+        BigInteger q = privateKey.getQ();
+        BigInteger rModInvq = null;
+        long[] samples = new long[LATENCY_SAMPLES];
+        for(int i=0; i<LATENCY_SAMPLES; i++){
+            long start = System.nanoTime();
+            rModInvq = r.modInverse(q);
+            samples[i] = System.nanoTime() - start;
+        }
+        //using the result keeps the inversion from being optimized away
+        if(!rModInvq.equals(privateKey.getRModInvq()))
+            throw new IllegalStateException("r.modInverse(q) differs from the r⁻¹ mod q of the private key");
+        Arrays.sort(samples);
+        return samples[LATENCY_SAMPLES / 2] / 1e3;
+    }
+
+    /**
+     * Helper function to convert the cipher values of a WIRE_FORMAT_BLOCKS block message to
+     * decimal strings and back, and to the binary wire format and back
+     * @return
+     *   a report line holding the size (in bytes) and round trip time (in milliseconds) of both forms
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n^2)   [decimal conversion of the cipher values]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static String wireFormatReport(MerkleHellmanKnapsackCryptosystem cryptosystem, Random random) throws Exception {
+        int keySize = cryptosystem.getKeySize();
+        byte[] message = message(cryptosystem.getBlockSize() * WIRE_FORMAT_BLOCKS - 1, random)
+                .getBytes(StandardCharsets.UTF_8);
+        List<BigInteger> cipherBlocks = cryptosystem.encryptBytes(message);
+        long decimalNanos = 0, binaryNanos = 0, decimalBytes = 0, binaryBytes = 0;
+        for(int iteration=0; iteration<WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++){
+            long start = System.nanoTime();
+            decimalBytes = 0;
+            List<BigInteger> parsed = new ArrayList<BigInteger>(cipherBlocks.size());
+            for(BigInteger cipherBlock: cipherBlocks){
+                String decimal = cipherBlock.toString();
+                decimalBytes += decimal.length();
+                parsed.add(new BigInteger(decimal));
+            }
+            long afterDecimal = System.nanoTime();
+            byte[] encoded = KnapsackCipherText.encode(cipherBlocks);
+            List<BigInteger> decoded = KnapsackCipherText.decode(encoded);
+            long afterBinary = System.nanoTime();
+            binaryBytes = encoded.length;
+            if(!parsed.equals(cipherBlocks) || !decoded.equals(cipherBlocks))
+                throw new Exception("Cipher text conversion did not round trip for key size " + keySize);
+            if(iteration >= WARMUP_ITERATIONS){
+                decimalNanos += afterDecimal - start;
+                binaryNanos += afterBinary - afterDecimal;
+            }
+        }
+        return String.format("%d, %d, %.3f, %d, %.3f%n", keySize, decimalBytes, decimalNanos / 1e6 / MEASURED_ITERATIONS,
+                binaryBytes, binaryNanos / 1e6 / MEASURED_ITERATIONS);
+    }
+
+    /**
+     * Helper function to encrypt and decrypt BATCH_RECORDS short records with a call per record
+     * and with a single call to encryptAll/decryptAll
+     * @return
+     *   a report line holding the records per second of both ways for encryption and decryption
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)   [m being BATCH_RECORDS]
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    private static String batchReport(MerkleHellmanKnapsackCryptosystem cryptosystem, Random random) throws Exception {
+        List<String> records = new ArrayList<String>(BATCH_RECORDS);
+        for(int i=0; i<BATCH_RECORDS; i++)
+            records.add(message(BATCH_RECORD_LENGTH, random));
+        long loopEncryptNanos = 0, loopDecryptNanos = 0, batchEncryptNanos = 0, batchDecryptNanos = 0;
+        for(int iteration=0; iteration<WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++){
+            long start = System.nanoTime();
+            List<String> cipherTexts = new ArrayList<String>(BATCH_RECORDS);
+            for(String record: records)
+                cipherTexts.add(cryptosystem.encrypt(record));
+            long afterLoopEncrypt = System.nanoTime();
+            List<String> plainTexts = new ArrayList<String>(BATCH_RECORDS);
+            for(String cipherText: cipherTexts)
+                plainTexts.add(cryptosystem.decrypt(cipherText));
+            long afterLoopDecrypt = System.nanoTime();
+            List<String> batchCipherTexts = cryptosystem.encryptAll(records);
+            long afterBatchEncrypt = System.nanoTime();
+            List<String> batchPlainTexts = cryptosystem.decryptAll(batchCipherTexts);
+            long afterBatchDecrypt = System.nanoTime();
+            if(!plainTexts.equals(records) || !batchCipherTexts.equals(cipherTexts) || !batchPlainTexts.equals(records))
+                throw new Exception("Batch encryption differs from encrypting one record at a time");
+            if(iteration >= WARMUP_ITERATIONS){
+                loopEncryptNanos += afterLoopEncrypt - start;
+                loopDecryptNanos += afterLoopDecrypt - afterLoopEncrypt;
+                batchEncryptNanos += afterBatchEncrypt - afterLoopDecrypt;
+                batchDecryptNanos += afterBatchDecrypt - afterBatchEncrypt;
+            }
+        }
+        double measuredRecords = (double) BATCH_RECORDS * MEASURED_ITERATIONS;
+        return String.format("%d, %.0f, %.0f, %.0f, %.0f%n", cryptosystem.getKeySize(),
+                measuredRecords * 1e9 / loopEncryptNanos, measuredRecords * 1e9 / batchEncryptNanos,
+                measuredRecords * 1e9 / loopDecryptNanos, measuredRecords * 1e9 / batchDecryptNanos);
+    }
+
+    /**
+     * Helper function returning the median and maximum time (in microseconds) of obtaining
+     * SESSIONS key pairs, generating each one or taking it from a full KnapsackKeyPool
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(s * n)   [s being SESSIONS]
+            Big-Omega: Ω(s * n)
+            Big-Theta: Θ(s * n)
+     */
+    private static String sessionKeyReport(Random random) throws Exception {
+        long[] generateSamples = new long[SESSIONS];
+        for(int i=0; i<SESSIONS; i++){
+            long start = System.nanoTime();
+            MerkleHellmanKnapsackCryptosystem.generateKeys(SESSION_KEY_SIZE, random);
+            generateSamples[i] = System.nanoTime() - start;
+        }
+        long[] poolSamples = new long[SESSIONS];
+        try(KnapsackKeyPool pool = new KnapsackKeyPool(SESSION_KEY_SIZE, SESSIONS, random)){
+            while(pool.getDepth() < SESSIONS)
+                Thread.sleep(10);
+            for(int i=0; i<SESSIONS; i++){
+                long start = System.nanoTime();
+                pool.get();
+                poolSamples[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(generateSamples);
+            Arrays.sort(poolSamples);
+            return String.format("%d, %.1f, %.1f, %.1f, %.1f, %.1f%n", SESSION_KEY_SIZE,
+                    generateSamples[SESSIONS / 2] / 1e3, generateSamples[SESSIONS - 1] / 1e3,
+                    poolSamples[SESSIONS / 2] / 1e3, poolSamples[SESSIONS - 1] / 1e3, pool.getRefillRate());
+        }
+    }
+
+    /**
+     * Main function running the benchmark and printing the average time per operation
+     **/
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(771);
+        StringBuilder latencyReport = new StringBuilder("keySize, singleCharDecryptUs, modInverseSavedPerCallUs\n");
+        StringBuilder wireFormatReport = new StringBuilder("keySize, decimalBytes, decimalRoundTripMs, binaryBytes, binaryRoundTripMs\n");
+        StringBuilder batchReport = new StringBuilder("keySize, encryptPerCallRecordsPerSec, encryptAllRecordsPerSec,"
+                + " decryptPerCallRecordsPerSec, decryptAllRecordsPerSec\n");
+        System.out.println("keySize, arrayEncryptMs, arrayDecryptMs, linkedListEncryptMs, linkedListDecomposeMs, tableEncryptMs, tableMB");
+        for(int keySize: KEY_SIZES){
+            BigInteger[] w = superIncreasingSequence(keySize, random);
+            MerkleHellmanKnapsackCryptosystem cryptosystem = new MerkleHellmanKnapsackCryptosystem();
+            SinglyLinkedList wList = new SinglyLinkedList();
+            SinglyLinkedList bList = new SinglyLinkedList();
+            for(BigInteger wi: w){
+                cryptosystem.addBigIntegerToW(wi);
+                wList.addAtEndNode(wi);
+            }
+            cryptosystem.generatePublicKeys(random);
+            for(int i=0; i<keySize; i++)
+                bList.addAtEndNode(cryptosystem.getValueAtFromB(i));
+
+            String message = message(keySize / 8 - 1, random);
+            boolean[] bits = new boolean[message.length() * 8];
+            BigInteger plainSum = BigInteger.valueOf(0);
+            for(int i=0; i<bits.length; i++){
+                bits[i] = ((message.charAt(i / 8) >> (7 - i % 8)) & 1) == 1;
+                if(bits[i])
+                    plainSum = plainSum.add(w[i]);
+            }
+
+            long encryptNanos = 0, decryptNanos = 0, listEncryptNanos = 0, listDecomposeNanos = 0;
+            for(int iteration=0; iteration<WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++){
+                boolean measured = iteration >= WARMUP_ITERATIONS;
+                long start = System.nanoTime();
+                String cipherText = cryptosystem.encrypt(message);
+                long afterEncrypt = System.nanoTime();
+                String plainText = cryptosystem.decrypt(cipherText);
+                long afterDecrypt = System.nanoTime();
+                if(!plainText.equals(message))
+                    throw new Exception("Decryption did not return the original message for key size " + keySize);
+                linkedListEncrypt(bList, bits);
+                long afterListEncrypt = System.nanoTime();
+                linkedListGreedyDecompose(wList, plainSum, bits.length);
+                long afterListDecompose = System.nanoTime();
+                if(measured){
+                    encryptNanos += afterEncrypt - start;
+                    decryptNanos += afterDecrypt - afterEncrypt;
+                    listEncryptNanos += afterListEncrypt - afterDecrypt;
+                    listDecomposeNanos += afterListDecompose - afterListEncrypt;
+                }
+            }
+            latencyReport.append(String.format("%d, %.1f, %.1f%n", keySize,
+                    medianDecryptMicros(cryptosystem), medianModInverseMicros(cryptosystem)));
+            wireFormatReport.append(wireFormatReport(cryptosystem, random));
+            batchReport.append(batchReport(cryptosystem, random));
+            System.out.printf("%d, %.3f, %.3f, %.3f, %.3f, ", keySize,
+                    encryptNanos / 1e6 / MEASURED_ITERATIONS, decryptNanos / 1e6 / MEASURED_ITERATIONS,
+                    listEncryptNanos / 1e6 / MEASURED_ITERATIONS, listDecomposeNanos / 1e6 / MEASURED_ITERATIONS);
+
+            if(!cryptosystem.buildEncryptionTable(ENCRYPTION_TABLE_BUDGET_BYTES)){
+                System.out.printf("-, %.1f (over budget)%n", cryptosystem.estimateEncryptionTableBytes() / 1e6);
+                continue;
+            }
+            long tableEncryptNanos = 0;
+            for(int iteration=0; iteration<WARMUP_ITERATIONS + MEASURED_ITERATIONS; iteration++){
+                long start = System.nanoTime();
+                String cipherText = cryptosystem.encrypt(message);
+                long afterEncrypt = System.nanoTime();
+                if(!cryptosystem.decrypt(cipherText).equals(message))
+                    throw new Exception("Table driven encryption did not round trip for key size " + keySize);
+                if(iteration >= WARMUP_ITERATIONS)
+                    tableEncryptNanos += afterEncrypt - start;
+            }
+            System.out.printf("%.3f, %.1f%n", tableEncryptNanos / 1e6 / MEASURED_ITERATIONS,
+                    cryptosystem.getEncryptionTableBytes() / 1e6);
+        }
+        System.out.println();
+        System.out.print(latencyReport);
+        System.out.println();
+        System.out.print(wireFormatReport);
+        System.out.println();
+        System.out.print(batchReport);
+
+        System.out.println();
+        System.out.println("keySize, generateMedianUs, generateMaxUs, poolMedianUs, poolMaxUs, poolRefillKeysPerSec");
+        System.out.print(sessionKeyReport(random));
+
+        System.out.println();
+        ForkJoinPool sequential = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool();
+        System.out.println("keySize, sequentialGenerateKeysMs, parallelGenerateKeysMs, threads");
+        //warm up the BigInteger arithmetic before timing key generation
+        MerkleHellmanKnapsackCryptosystem.generateKeys(KEY_GENERATION_SIZES[0], random, parallel);
+        for(int keySize: KEY_GENERATION_SIZES){
+            //the same seed yields the same keys on both pools
+            long start = System.nanoTime();
+            MerkleHellmanKnapsackCryptosystem.generateKeys(keySize, new Random(keySize), sequential);
+            long sequentialNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            MerkleHellmanKnapsackCryptosystem.generateKeys(keySize, new Random(keySize), parallel);
+            long parallelNanos = System.nanoTime() - start;
+            System.out.printf("%d, %.1f, %.1f, %d%n", keySize, sequentialNanos / 1e6, parallelNanos / 1e6,
+                    parallel.getParallelism());
+        }
+        sequential.shutdown();
+        parallel.shutdown();
+    }
+}
@@ -0,0 +1,153 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/******************************************************************************
+ * KnapsackCipherText converts the cipher values of a block mode cipher text to and from
+ * a compact binary wire format, as an alternative to their decimal strings:
+ *
+ *   int    number of blocks
+ *   int    length of block 0, followed by its two's-complement bytes (BigInteger.toByteArray)
+ *   ...
+ *
+ * All ints are big-endian. Converting a BigInteger to bytes is linear in its size, unlike
+ * the decimal conversion, and takes about 0.42 times the space of its decimal digits.
+ * KnapsackOutputStream and KnapsackInputStream frame every block the same way, leaving out
+ * the number of blocks since a stream ends after its padding block
+ ******************************************************************************/
+public final class KnapsackCipherText {
+
+    private KnapsackCipherText(){
+    }
+
+    /**
+     * Method used to encode cipher values into the binary wire format
+     * @return
+     *   a byte array holding every block in order
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static byte[] encode(List<BigInteger> cipherBlocks){
+        byte[][] blocks = new byte[cipherBlocks.size()][];
+        int length = 4;
+        for(int i=0; i<blocks.length; i++){
+            blocks[i] = cipherBlocks.get(i).toByteArray();
+            length += 4 + blocks[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(blocks.length);
+        for(byte[] block: blocks){
+            buffer.putInt(block.length);
+            buffer.put(block);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Method used to decode a byte array produced by encode back to cipher values
+     * @return
+     *   the list of cipher values in order
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static List<BigInteger> decode(byte[] cipherText){
+        ByteBuffer buffer = ByteBuffer.wrap(cipherText);
+        try{
+            int numberOfBlocks = buffer.getInt();
+            if(numberOfBlocks < 0 || numberOfBlocks > buffer.remaining() / 4)
+                throw new IllegalArgumentException("Invalid number of cipher blocks: " + numberOfBlocks);
+            List<BigInteger> cipherBlocks = new ArrayList<BigInteger>(numberOfBlocks);
+            for(int i=0; i<numberOfBlocks; i++){
+                int length = buffer.getInt();
+                if(length <= 0 || length > buffer.remaining())
+                    throw new IllegalArgumentException("Invalid length of cipher block " + i + ": " + length);
+                cipherBlocks.add(new BigInteger(cipherText, buffer.position(), length));
+                buffer.position(buffer.position() + length);
+            }
+            if(buffer.hasRemaining())
+                throw new IllegalArgumentException(buffer.remaining() + " trailing bytes after the last cipher block");
+            return cipherBlocks;
+        }
+        catch(BufferUnderflowException truncated){
+            throw new IllegalArgumentException("Cipher text is truncated", truncated);
+        }
+    }
+
+    /**
+     * Method used to write a single cipher value to out as its length followed by its bytes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the length of the cipher value]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    static void writeBlock(OutputStream out, BigInteger cipherValue) throws IOException {
+        byte[] block = cipherValue.toByteArray();
+        byte[] frame = new byte[4 + block.length];
+        ByteBuffer.wrap(frame).putInt(block.length).put(block);
+        out.write(frame);
+    }
+
+    /**
+     * Method used to read a single cipher value written by writeBlock
+     * @param maxLength
+     *   the largest length accepted, so that a corrupt length cannot exhaust the heap
+     * @return
+     *   the cipher value, or null when in is at its end
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the length of the cipher value]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    static BigInteger readBlock(InputStream in, int maxLength) throws IOException {
+        int first = in.read();
+        if(first < 0)
+            return null;
+        byte[] lengthBytes = {(byte) first, 0, 0, 0};
+        readFully(in, lengthBytes, 1, 3);
+        int length = ByteBuffer.wrap(lengthBytes).getInt();
+        if(length <= 0 || length > maxLength)
+            throw new IOException("Invalid length of cipher block: " + length);
+        byte[] block = new byte[length];
+        readFully(in, block, 0, length);
+        return new BigInteger(block);
+    }
+
+    /**
+     * Helper function reading exactly length bytes of in into buffer starting at offset
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    private static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        while(length > 0){
+            int read = in.read(buffer, offset, length);
+            if(read < 0)
+                throw new EOFException("Cipher text is truncated");
+            offset += read;
+            length -= read;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/******************************************************************************
+ * KnapsackClient sends encrypt and decrypt requests to a KnapsackServer over a single
+ * connection, see KnapsackServer for the protocol. Requests on one client are answered
+ * in order, so objects of this class are not safe for use by several threads at once;
+ * concurrent callers each open their own client
+ ******************************************************************************/
+public class KnapsackClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Initialize a KnapsackClient connected to the server at address
+     * @postcondition
+     *   the connection is open
+     **/
+    public KnapsackClient(SocketAddress address) throws IOException {
+        //SocketChannel.open picks the protocol family of address, TCP or Unix domain
+        this.channel = SocketChannel.open(address);
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Method used to encrypt message on the server
+     * @return
+     *   the cipher text in the wire format of KnapsackCipherText
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public byte[] encrypt(byte[] message) throws IOException {
+        return call(KnapsackServer.ENCRYPT, message);
+    }
+
+    /**
+     * Method used to decrypt a cipher text in the wire format of KnapsackCipherText on the server
+     * @return
+     *   the original data
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public byte[] decrypt(byte[] cipherText) throws IOException {
+        return call(KnapsackServer.DECRYPT, cipherText);
+    }
+
+    /**
+     * Method used to close the connection
+     **/
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Helper function sending a request and waiting for its response
+     * @return
+     *   the payload of the response
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private byte[] call(byte op, byte[] payload) throws IOException {
+        KnapsackServer.writePayload(out, op, payload);
+        byte[] status = new byte[1];
+        byte[] response = KnapsackServer.readPayload(in, status);
+        if(response == null)
+            throw new EOFException("Server closed the connection");
+        if(status[0] != KnapsackServer.OK)
+            throw new IOException("Server failed the request: " + new String(response, StandardCharsets.UTF_8));
+        return response;
+    }
+}
@@ -0,0 +1,201 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/******************************************************************************
+ * KnapsackInputStream reads the cipher values written by a KnapsackOutputStream from the
+ * underlying stream and returns the decrypted data, decrypting a single block at a time
+ * with a KnapsackPrivateKey. Since only the last block carries the padding, the cipher
+ * value after the current one is read ahead to tell whether the current block is the last.
+ * At most one block of plain text and one cipher value are held, so data of any size is
+ * decrypted at constant memory. For KnapsackMetrics a stream is a single decryption of all
+ * bytes it returns, timed from creation to the end of the data; a cipher text that cannot be
+ * decrypted counts as a single failure.
+ * Objects of this class are not safe for use by several threads at once
+ ******************************************************************************/
+public class KnapsackInputStream extends InputStream {
+    private final InputStream in;
+    private final KnapsackPrivateKey key;
+    private final byte[] block;
+    private final int maxCipherValueBytes;
+    //the cipher value following the block being read, null once the last block is decrypted
+    private BigInteger next;
+    private int position;
+    private int limit;
+    private boolean started;
+    private boolean closed;
+    private boolean failed;
+    private final long start;
+    private long decrypted;
+
+    /**
+     * Initialize a KnapsackInputStream decrypting the cipher text read from in
+     * @postcondition
+     *   A KnapsackInputStream holding an empty block of key.getBlockSize() bytes is initialized,
+     *   nothing is read from in yet
+     **/
+    public KnapsackInputStream(InputStream in, KnapsackPrivateKey key){
+        this.in = in;
+        this.key = key;
+        this.block = new byte[key.getBlockSize()];
+        this.maxCipherValueBytes = key.getMaxCipherValueBytes();
+        this.start = KnapsackMetrics.start();
+    }
+
+    /**
+     * Method used to wrap a channel so that reading from the returned channel
+     * returns the data decrypted from source
+     * @return
+     *   a ReadableByteChannel decrypting from source
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public static ReadableByteChannel newChannel(ReadableByteChannel source, KnapsackPrivateKey key){
+        return Channels.newChannel(new KnapsackInputStream(Channels.newInputStream(source), key));
+    }
+
+    /**
+     * Method used to read a single byte of decrypted data
+     * @return
+     *   the byte as an int between 0 and 255, or -1 at the end of the data
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [when a block is decrypted, O(1) otherwise]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1) amortized
+     */
+    @Override
+    public int read() throws IOException {
+        if(position == limit && !fill())
+            return -1;
+        return block[position++] & 0xFF;
+    }
+
+    /**
+     * Method used to read upto len bytes of decrypted data into data starting at off
+     * @return
+     *   the number of bytes read, or -1 at the end of the data
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(len)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(len)
+     */
+    @Override
+    public int read(byte[] data, int off, int len) throws IOException {
+        if(off < 0 || len < 0 || len > data.length - off)
+            throw new IndexOutOfBoundsException();
+        if(len == 0)
+            return 0;
+        int read = 0;
+        while(read < len){
+            if(position == limit && !fill())
+                break;
+            int copied = Math.min(len - read, limit - position);
+            System.arraycopy(block, position, data, off + read, copied);
+            position += copied;
+            read += copied;
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    /**
+     * Returns the number of decrypted bytes that can be read without reading the underlying stream
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return limit - position;
+    }
+
+    /**
+     * Method used to close the underlying stream
+     **/
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        in.close();
+    }
+
+    /**
+     * Helper function decrypting the next block that holds data
+     * @postcondition
+     *   block[position, limit) holds the decrypted data of the block
+     * @return
+     *   false at the end of the data
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(n)
+     */
+    private boolean fill() throws IOException {
+        ensureOpen();
+        if(failed)
+            throw new IOException("Cipher text could not be decrypted");
+        try{
+            if(!started){
+                started = true;
+                next = KnapsackCipherText.readBlock(in, maxCipherValueBytes);
+                if(next == null)
+                    throw new IOException("Cipher text is empty, it holds at least the padding block");
+            }
+            while(next != null){
+                BigInteger current = next;
+                next = KnapsackCipherText.readBlock(in, maxCipherValueBytes);
+                key.decryptBuffer(current, block);
+                position = 0;
+                limit = 0;
+                if(next == null){
+                    try{
+                        limit = KnapsackPrivateKey.paddingStart(block);
+                    }
+                    catch(IllegalArgumentException invalidPadding){
+                        throw new IOException(invalidPadding.getMessage(), invalidPadding);
+                    }
+                    decrypted += limit;
+                    KnapsackMetrics.record(KnapsackMetrics.Operation.DECRYPT, start, decrypted);
+                }
+                else{
+                    limit = block.length;
+                    decrypted += limit;
+                }
+                if(limit > 0)
+                    return true;
+            }
+            return false;
+        }
+        catch(IOException | RuntimeException failure){
+            failed = true;
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.DECRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Helper function failing when the stream is closed
+     **/
+    private void ensureOpen() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+    }
+}
@@ -0,0 +1,219 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/******************************************************************************
+ * KnapsackKeyFile stores a Merkle–Hellman key pair in a compact, versioned binary file
+ * and loads it back by memory mapping the file. All numbers are big-endian.
+ *
+ *   int    magic "MHKK"
+ *   int    version (1)
+ *   int    n, the number of elements in the knapsack
+ *   number q
+ *   number r
+ *   number r⁻¹ mod q (stored so that loading needs no modInverse)
+ *   number w[0] ... w[n-1]
+ *   number b[0] ... b[n-1]
+ *
+ * where every number is an int length followed by that many bytes of unsigned magnitude.
+ * Loading only reads the length prefixes, the elements of w and b are turned into
+ * BigIntegers the first time they are used. A file whose size or lengths do not match
+ * this layout, e.g. a truncated file, is rejected with an IOException naming the problem
+ ******************************************************************************/
+public final class KnapsackKeyFile {
+    private static final int MAGIC = 0x4D484B4B;
+    private static final int VERSION = 1;
+
+    private KnapsackKeyFile(){
+    }
+
+    /**
+     * Method used to write the keys of cryptosystem to file
+     * @precondition
+     *   the keys of cryptosystem are generated
+     * @postcondition
+     *   file holds the key pair, replacing any previous content
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static void write(Path file, MerkleHellmanKnapsackCryptosystem cryptosystem) throws IOException {
+        write(file, cryptosystem.getPublicKey(), cryptosystem.getPrivateKey());
+    }
+
+    /**
+     * Method used to write a key pair to file
+     * @precondition
+     *   publicKey and privateKey belong together
+     * @postcondition
+     *   file holds the key pair, replacing any previous content
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static void write(Path file, KnapsackPublicKey publicKey, KnapsackPrivateKey privateKey) throws IOException {
+        int size = privateKey.getSize();
+        if(publicKey.getSize() != size)
+            throw new IllegalArgumentException("Public key and private key differ in size");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            writeNumber(out, privateKey.getQ());
+            writeNumber(out, privateKey.getR());
+            writeNumber(out, privateKey.getRModInvq());
+            for(int i=0; i<size; i++)
+                writeNumber(out, privateKey.getValueAt(i));
+            for(int i=0; i<size; i++)
+                writeNumber(out, publicKey.getValueAt(i));
+        }
+    }
+
+    /**
+     * Method used to load the key pair stored in file
+     * @return
+     *   a MerkleHellmanKnapsackCryptosystem holding the loaded public and private keys
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [reads the length prefixes only]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static MerkleHellmanKnapsackCryptosystem load(Path file) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int size = readSize(buffer, file);
+        BigInteger q = readNumber(buffer);
+        BigInteger r = readNumber(buffer);
+        BigInteger rModInvq = readNumber(buffer);
+        KnapsackPrivateKey privateKey = new KnapsackPrivateKey(new MappedKnapsackSequence(buffer, size), q, r, rModInvq);
+        KnapsackPublicKey publicKey = new KnapsackPublicKey(new MappedKnapsackSequence(buffer, size));
+        return new MerkleHellmanKnapsackCryptosystem(publicKey, privateKey);
+    }
+
+    /**
+     * Method used to load only the public key stored in file, e.g. for processes that only encrypt
+     * @return
+     *   the loaded public key
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [reads the length prefixes only]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static KnapsackPublicKey loadPublicKey(Path file) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        int size = readSize(buffer, file);
+        //skip q, r, r⁻¹ mod q and w
+        for(int i=0; i<3 + size; i++)
+            buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+        return new KnapsackPublicKey(new MappedKnapsackSequence(buffer, size));
+    }
+
+    /**
+     * Helper function mapping file into memory and checking its header
+     * @postcondition
+     *   the returned buffer is positioned after the version
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        //the mapping stays valid after the channel is closed
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.remaining() < 12 || buffer.getInt() != MAGIC)
+            throw new IOException(file + " is not a knapsack key file");
+        int version = buffer.getInt();
+        if(version != VERSION)
+            throw new IOException(file + " has unsupported key file version " + version);
+        return buffer;
+    }
+
+    /**
+     * Helper function reading the number of elements and checking that the rest of the file
+     * holds exactly the 3 + 2 * size numbers following it
+     * @postcondition
+     *   the position of buffer is moved past the number of elements
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [reads the length prefixes only]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(n)
+     */
+    private static int readSize(MappedByteBuffer buffer, Path file) throws IOException {
+        int size = buffer.getInt();
+        //the keys hold a byte of the message at the least
+        if(size < 8)
+            throw new IOException(file + " has an invalid number of elements " + size);
+        long count = 3 + 2L * size;
+        int offset = buffer.position();
+        for(long i=0; i<count; i++){
+            if(buffer.limit() - offset < 4)
+                throw new IOException(file + " is truncated, it ends before the length of number " + i + " of " + count);
+            int length = buffer.getInt(offset);
+            if(length < 0)
+                throw new IOException(file + " has the negative length " + length + " at byte " + offset);
+            if(length > buffer.limit() - offset - 4)
+                throw new IOException(file + " is truncated, number " + i + " of " + count + " needs " + length
+                        + " bytes but " + (buffer.limit() - offset - 4) + " remain");
+            offset += 4 + length;
+        }
+        if(offset != buffer.limit())
+            throw new IOException(file + " has " + (buffer.limit() - offset) + " unexpected bytes after b");
+        return size;
+    }
+
+    /**
+     * Helper function writing a non negative number as its length followed by its unsigned magnitude
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the length of the number]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    private static void writeNumber(DataOutputStream out, BigInteger number) throws IOException {
+        byte[] magnitude = number.toByteArray();
+        //toByteArray adds a leading 0x00 sign byte when the top bit of the magnitude is set
+        int from = magnitude.length > 1 && magnitude[0] == 0 ? 1 : 0;
+        out.writeInt(magnitude.length - from);
+        out.write(magnitude, from, magnitude.length - from);
+    }
+
+    /**
+     * Helper function reading a number written by writeNumber at the position of buffer
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the length of the number]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    private static BigInteger readNumber(MappedByteBuffer buffer){
+        byte[] magnitude = new byte[buffer.getInt()];
+        buffer.get(magnitude);
+        return new BigInteger(1, magnitude);
+    }
+}
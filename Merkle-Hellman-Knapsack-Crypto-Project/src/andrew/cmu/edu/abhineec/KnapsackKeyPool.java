@@ -0,0 +1,261 @@
+package andrew.cmu.edu.abhineec;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/******************************************************************************
+ * KnapsackKeyPool keeps a supply of freshly generated key pairs, so that handing a new
+ * key pair to a session does not wait for MerkleHellmanKnapsackCryptosystem.generateKeys.
+ * A daemon thread generates key pairs of the configured size until the pool holds
+ * watermark of them and then waits for one to be taken. It builds them on a ForkJoinPool of
+ * its own with GENERATOR_PARALLELISM workers, so that refills do not compete with the fork/join
+ * work of encryption and decryption in the common pool. poll() takes a key pair in O(1)
+ * without blocking; get() falls back to generating a key pair on the calling thread
+ * when the pool has run dry. Every key pair is handed out once. When key generation keeps
+ * failing, e.g. on a broken SecureRandom or an OutOfMemoryError, the generator thread logs
+ * every failure and backs off exponentially, from MIN_BACKOFF_MILLIS upto MAX_BACKOFF_MILLIS
+ * between attempts, instead of spinning or dying.
+ * Objects of this class are safe for use by several threads at once
+ ******************************************************************************/
+public class KnapsackKeyPool implements AutoCloseable {
+    private static final long MIN_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 10000;
+    private static final int GENERATOR_PARALLELISM = 2;
+
+    private final int keySize;
+    private final BlockingQueue<MerkleHellmanKnapsackCryptosystem> keys;
+    private final Random random;
+    private final Thread generator;
+    private final ForkJoinPool generatorPool;
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+    private final AtomicLong handedOut = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Initialize a KnapsackKeyPool of key pairs of keySize elements generated with a SecureRandom
+     * @postcondition
+     *   the generator thread is started and fills the pool upto watermark key pairs
+     **/
+    public KnapsackKeyPool(int keySize, int watermark){
+        this(keySize, watermark, new SecureRandom());
+    }
+
+    /**
+     * Initialize a KnapsackKeyPool of key pairs of keySize elements generated with random
+     * @precondition
+     *   keySize is at least 8, watermark is at least 1, random is safe for use by several threads
+     * @postcondition
+     *   the generator thread is started and fills the pool upto watermark key pairs
+     **/
+    public KnapsackKeyPool(int keySize, int watermark, Random random){
+        if(keySize < 8)
+            throw new IllegalArgumentException("Knapsack size must be at least 8");
+        if(watermark < 1)
+            throw new IllegalArgumentException("Watermark must be at least 1");
+        this.keySize = keySize;
+        this.keys = new ArrayBlockingQueue<MerkleHellmanKnapsackCryptosystem>(watermark);
+        this.random = random;
+        this.generatorPool = new ForkJoinPool(GENERATOR_PARALLELISM);
+        this.generator = new Thread(this::refill, "knapsack-key-pool-" + keySize);
+        this.generator.setDaemon(true);
+        this.generator.start();
+    }
+
+    /**
+     * Method used to take a pre-generated key pair without blocking
+     * @return
+     *   a key pair that has not been handed out before, or null when the pool is empty
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public MerkleHellmanKnapsackCryptosystem poll(){
+        MerkleHellmanKnapsackCryptosystem key = keys.poll();
+        if(key != null)
+            handedOut.incrementAndGet();
+        return key;
+    }
+
+    /**
+     * Method used to take a pre-generated key pair, generating one on the calling thread
+     * when the pool is empty
+     * @return
+     *   a key pair that has not been handed out before
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [when the pool is empty, O(1) otherwise]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1) while the pool keeps up
+     */
+    public MerkleHellmanKnapsackCryptosystem get() throws Exception {
+        MerkleHellmanKnapsackCryptosystem key = poll();
+        if(key != null)
+            return key;
+        misses.incrementAndGet();
+        handedOut.incrementAndGet();
+        return MerkleHellmanKnapsackCryptosystem.generateKeys(keySize, random);
+    }
+
+    /**
+     * Returns the number of key pairs waiting in the pool
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getDepth(){
+        return keys.size();
+    }
+
+    /**
+     * Returns the number of key pairs the pool holds at most
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getWatermark(){
+        return keys.size() + keys.remainingCapacity();
+    }
+
+    /**
+     * Returns the number of key pairs generated by the generator thread
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getGeneratedCount(){
+        return generated.get();
+    }
+
+    /**
+     * Returns the number of key pairs handed out by poll and get
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getHandedOutCount(){
+        return handedOut.get();
+    }
+
+    /**
+     * Returns the number of calls to get that found the pool empty
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getMissCount(){
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of key generations of the generator thread that failed
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getFailureCount(){
+        return failures.get();
+    }
+
+    /**
+     * Returns the rate (in key pairs per second) at which the generator thread refills the pool,
+     * measured over the time it spent generating, 0 before the first key pair is generated
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public double getRefillRate(){
+        long nanos = generationNanos.get();
+        return nanos == 0 ? 0 : generated.get() * 1e9 / nanos;
+    }
+
+    /**
+     * Method used to stop the generator thread and its ForkJoinPool, key pairs still in the
+     * pool can be taken
+     * @postcondition
+     *   no further key pairs are generated in the background
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public void close(){
+        closed = true;
+        generator.interrupt();
+        generatorPool.shutdownNow();
+    }
+
+    /**
+     * Body of the generator thread, generating key pairs while the pool is below its watermark
+     **/
+    private void refill(){
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        while(!closed){
+            MerkleHellmanKnapsackCryptosystem key;
+            long start = System.nanoTime();
+            try{
+                key = MerkleHellmanKnapsackCryptosystem.generateKeys(keySize, random, generatorPool);
+            }
+            catch(Throwable failure){
+                //close() cancels the generation in progress
+                if(closed)
+                    return;
+                failures.incrementAndGet();
+                System.err.println("KnapsackKeyPool failed to generate a key pair: " + failure);
+                try{
+                    //wait twice as long after every consecutive failure, get() still reports the failure itself
+                    Thread.sleep(backoffMillis);
+                }
+                catch(InterruptedException interrupted){
+                    return;
+                }
+                backoffMillis = Math.min(2 * backoffMillis, MAX_BACKOFF_MILLIS);
+                continue;
+            }
+            backoffMillis = MIN_BACKOFF_MILLIS;
+            generationNanos.addAndGet(System.nanoTime() - start);
+            generated.incrementAndGet();
+            try{
+                //waits while the pool is at its watermark
+                keys.put(key);
+            }
+            catch(InterruptedException interrupted){
+                return;
+            }
+        }
+    }
+}
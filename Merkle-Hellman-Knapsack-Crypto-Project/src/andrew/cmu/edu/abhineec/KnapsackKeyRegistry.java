@@ -0,0 +1,362 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/******************************************************************************
+ * KnapsackKeyRegistry hands out the key pair of a key ID, e.g. of a tenant, loading it on
+ * demand and keeping the capacity most recently used key pairs in memory. A key pair is cached
+ * expanded: every element of w is materialized for decryption and, within the encryption table
+ * budget, the encryption table is built, so that a cached key pair encrypts and decrypts at full
+ * speed from its first use. Encryption without table adds the elements of b straight from the
+ * key file, so b is not copied onto the heap. Loading the least recently used key
+ * pair beyond capacity evicts it. The cache is an access ordered LinkedHashMap guarded by its
+ * own lock, which is never held while a key pair loads; threads asking for a key ID that is
+ * being loaded wait for that load instead of starting another one. Invalidating a key ID that
+ * is being loaded detaches the load: its waiters still get the key pair it loads, but it is
+ * not cached, and the next lookup loads the key pair again.
+ * Objects of this class are safe for use by several threads at once
+ ******************************************************************************/
+public class KnapsackKeyRegistry {
+    //name of the key file of a key ID in the directory of a registry, see KnapsackKeyRegistry(int, Path)
+    static final String KEY_FILE_SUFFIX = ".mhkk";
+
+    /**
+     * Loads the key pair of a key ID, e.g. from a key file or a key store
+     **/
+    public interface KeyLoader {
+        MerkleHellmanKnapsackCryptosystem load(String keyId) throws IOException;
+    }
+
+    private final int capacity;
+    private final long encryptionTableBytes;
+    private final KeyLoader loader;
+    private final LinkedHashMap<String, MerkleHellmanKnapsackCryptosystem> cache;
+    //loads in progress, guarded by the lock of cache like all counters below; a load only caches
+    //its key pair while it is still the entry of its key ID, which invalidate removes
+    private final Map<String, FutureTask<MerkleHellmanKnapsackCryptosystem>> loading =
+            new HashMap<String, FutureTask<MerkleHellmanKnapsackCryptosystem>>();
+    private long hits;
+    private long misses;
+    private long loads;
+    private long loadFailures;
+    private long loadNanos;
+    private long evictions;
+
+    /**
+     * Initialize a KnapsackKeyRegistry loading the key pair of key ID id from the key file
+     * id + KEY_FILE_SUFFIX in directory, written by KnapsackKeyFile, without encryption tables
+     **/
+    public KnapsackKeyRegistry(int capacity, Path directory){
+        this(capacity, 0, keyId -> KnapsackKeyFile.load(keyFile(directory, keyId)));
+    }
+
+    /**
+     * Initialize a KnapsackKeyRegistry loading key pairs with loader
+     * @param capacity
+     *   number of key pairs kept in memory
+     * @param encryptionTableBytes
+     *   heap memory the encryption table of a single key pair may take, 0 for no tables
+     * @precondition
+     *   capacity is at least 1
+     **/
+    public KnapsackKeyRegistry(int capacity, long encryptionTableBytes, KeyLoader loader){
+        if(capacity < 1)
+            throw new IllegalArgumentException("Registry must hold at least one key pair");
+        this.capacity = capacity;
+        this.encryptionTableBytes = encryptionTableBytes;
+        this.loader = loader;
+        //access order moves every key pair looked up to the end, so the eldest is the least recently used
+        this.cache = new LinkedHashMap<String, MerkleHellmanKnapsackCryptosystem>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MerkleHellmanKnapsackCryptosystem> eldest){
+                if(size() <= KnapsackKeyRegistry.this.capacity)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Method used to look up the key pair of keyId, loading and expanding it when it is not cached
+     * @postcondition
+     *   the key pair is the most recently used one, the least recently used key pair is evicted
+     *   when the registry holds more than capacity key pairs
+     * @return
+     *   the key pair of keyId
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)   [loading and expanding a key pair of n elements of m limbs]
+            Big-Omega: Ω(1)   [a cached key pair]
+            Big-Theta: Θ(1)
+     */
+    public MerkleHellmanKnapsackCryptosystem get(String keyId) throws IOException {
+        FutureTask<MerkleHellmanKnapsackCryptosystem> load;
+        boolean loadsHere = false;
+        synchronized(cache){
+            MerkleHellmanKnapsackCryptosystem keys = cache.get(keyId);
+            if(keys != null){
+                hits++;
+                return keys;
+            }
+            misses++;
+            load = loading.get(keyId);
+            if(load == null){
+                load = new FutureTask<MerkleHellmanKnapsackCryptosystem>(() -> expand(loader.load(keyId)));
+                loading.put(keyId, load);
+                loadsHere = true;
+            }
+        }
+        if(!loadsHere)
+            return await(load);
+        long start = System.nanoTime();
+        load.run();
+        MerkleHellmanKnapsackCryptosystem keys = null;
+        try{
+            keys = await(load);
+            return keys;
+        }
+        finally{
+            synchronized(cache){
+                boolean current = loading.get(keyId) == load;
+                if(current)
+                    loading.remove(keyId);
+                loadNanos += System.nanoTime() - start;
+                if(keys != null){
+                    loads++;
+                    //an invalidated load is handed to its waiters only
+                    if(current)
+                        cache.put(keyId, keys);
+                }
+                else
+                    loadFailures++;
+            }
+        }
+    }
+
+    /**
+     * Method used to drop the cached key pair of keyId, e.g. after its key file was replaced
+     * @postcondition
+     *   a load of keyId in progress is not cached, the next lookup of keyId loads it again
+     * @return
+     *   true if the key pair was cached or being loaded
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public boolean invalidate(String keyId){
+        synchronized(cache){
+            boolean loaded = loading.remove(keyId) != null;
+            return cache.remove(keyId) != null || loaded;
+        }
+    }
+
+    /**
+     * Returns the number of cached key pairs
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int size(){
+        synchronized(cache){
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns the number of key pairs kept in memory at most
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getHitCount(){
+        synchronized(cache){
+            return hits;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that had to load the key pair or wait for its load
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getMissCount(){
+        synchronized(cache){
+            return misses;
+        }
+    }
+
+    /**
+     * Returns the number of key pairs loaded successfully
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getLoadCount(){
+        synchronized(cache){
+            return loads;
+        }
+    }
+
+    /**
+     * Returns the number of loads that failed
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getLoadFailureCount(){
+        synchronized(cache){
+            return loadFailures;
+        }
+    }
+
+    /**
+     * Returns the number of key pairs evicted to stay within capacity
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getEvictionCount(){
+        synchronized(cache){
+            return evictions;
+        }
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache, 0 before the first lookup
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public double getHitRate(){
+        synchronized(cache){
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+
+    /**
+     * Returns the mean time (in milliseconds) of loading and expanding a key pair, 0 before the first load
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public double getAverageLoadMillis(){
+        synchronized(cache){
+            return loads + loadFailures == 0 ? 0 : loadNanos / 1e6 / (loads + loadFailures);
+        }
+    }
+
+    /**
+     * Helper function expanding a freshly loaded key pair: materializes w and builds the
+     * encryption table when it fits the budget
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n * m)
+     */
+    private MerkleHellmanKnapsackCryptosystem expand(MerkleHellmanKnapsackCryptosystem keys){
+        KnapsackPrivateKey privateKey = keys.getPrivateKey();
+        for(int i=0; i<privateKey.getSize(); i++)
+            privateKey.getValueAt(i);
+        if(encryptionTableBytes > 0)
+            keys.buildEncryptionTable(encryptionTableBytes);
+        return keys;
+    }
+
+    /**
+     * Helper function waiting for a load, rethrowing its failure
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)   [besides the wait]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static MerkleHellmanKnapsackCryptosystem await(FutureTask<MerkleHellmanKnapsackCryptosystem> load)
+            throws IOException {
+        try{
+            return load.get();
+        }
+        catch(InterruptedException interrupted){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a key pair to load");
+        }
+        catch(ExecutionException failed){
+            Throwable cause = failed.getCause();
+            if(cause instanceof IOException)
+                throw (IOException) cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if(cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException("Loading a key pair failed", cause);
+        }
+    }
+
+    /**
+     * Helper function returning the key file of keyId in directory, rejecting key IDs that
+     * would point outside of it
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(k)   [k being the length of keyId]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(k)
+     */
+    private static Path keyFile(Path directory, String keyId){
+        if(keyId.isEmpty() || keyId.contains("/") || keyId.contains("\\") || keyId.startsWith("."))
+            throw new IllegalArgumentException("Invalid key ID: " + keyId);
+        return directory.resolve(keyId + KEY_FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,138 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/******************************************************************************
+ * KnapsackLoadGenerator measures how a KnapsackServer scales with concurrent connections.
+ * For 1, 2, 4, ... upto maxConnections connections it opens that many KnapsackClients, each on
+ * its own thread, lets every client send requests encrypt/decrypt round trips of a random
+ * message and reports the round trips per second and the median and 99th percentile latency.
+ * Without an address it starts a KnapsackServer with a fresh 641 element key in process, and
+ * first checks a round trip of the largest message the server encrypts, see getMaxEncryptBytes.
+ * Usage: java andrew.cmu.edu.abhineec.KnapsackLoadGenerator [port | socketPath] [maxConnections] [requests] [messageLength]
+ ******************************************************************************/
+public class KnapsackLoadGenerator {
+    private static final int DEFAULT_MAX_CONNECTIONS = 16;
+    private static final int DEFAULT_REQUESTS = 2000;
+    private static final int DEFAULT_MESSAGE_LENGTH = 64;
+    private static final int IN_PROCESS_KEY_SIZE = 641;
+
+    /**
+     * Helper function running requests round trips on each of connections clients at once
+     * @return
+     *   a report line: connections, round trips per second, median and 99th percentile latency in microseconds
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(c * r * n)   [c connections of r requests of n bytes]
+            Big-Omega: Ω(c * r * n)
+            Big-Theta: Θ(c * r * n)
+     */
+    private static String run(SocketAddress address, int connections, int requests, int messageLength) throws Exception {
+        long[] latencies = new long[connections * requests];
+        CountDownLatch ready = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        Thread[] threads = new Thread[connections];
+        for(int c=0; c<connections; c++){
+            int first = c * requests;
+            Random random = new Random(c);
+            threads[c] = new Thread(() -> {
+                try(KnapsackClient client = new KnapsackClient(address)){
+                    byte[] message = new byte[messageLength];
+                    ready.countDown();
+                    go.await();
+                    for(int i=0; i<requests; i++){
+                        random.nextBytes(message);
+                        long start = System.nanoTime();
+                        byte[] plainText = client.decrypt(client.encrypt(message));
+                        latencies[first + i] = System.nanoTime() - start;
+                        if(!Arrays.equals(plainText, message))
+                            throw new IllegalStateException("Round trip through the server changed the message");
+                    }
+                }
+                catch(Exception clientFailure){
+                    failure.compareAndSet(null, clientFailure);
+                    ready.countDown();
+                }
+            });
+            threads[c].start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for(Thread thread: threads)
+            thread.join();
+        long elapsed = System.nanoTime() - start;
+        if(failure.get() != null)
+            throw failure.get();
+        Arrays.sort(latencies);
+        return String.format("%d, %.0f, %.1f, %.1f", connections, latencies.length * 1e9 / elapsed,
+                latencies[latencies.length / 2] / 1e3, latencies[(int) (latencies.length * 0.99)] / 1e3);
+    }
+
+    /**
+     * Helper function checking that a message of maxEncryptBytes bytes survives a round trip
+     * through the server and that a message one byte longer is refused
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [n being maxEncryptBytes]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static void checkLargestMessage(SocketAddress address, int maxEncryptBytes) throws Exception {
+        try(KnapsackClient client = new KnapsackClient(address)){
+            byte[] message = new byte[maxEncryptBytes];
+            //every bit set gives the largest cipher values
+            Arrays.fill(message, (byte) 0xFF);
+            if(!Arrays.equals(client.decrypt(client.encrypt(message)), message))
+                throw new IllegalStateException("Round trip of " + maxEncryptBytes + " bytes changed the message");
+            try{
+                client.encrypt(new byte[maxEncryptBytes + 1]);
+            }
+            catch(IOException refused){
+                return;
+            }
+            throw new IllegalStateException("Server encrypted a message beyond " + maxEncryptBytes + " bytes");
+        }
+    }
+
+    /**
+     * Main function running the load at every concurrency level and printing one report line each
+     **/
+    public static void main(String[] args) throws Exception {
+        int maxConnections = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_CONNECTIONS;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REQUESTS;
+        int messageLength = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MESSAGE_LENGTH;
+        KnapsackServer server = null;
+        SocketAddress address;
+        if(args.length > 0)
+            address = KnapsackServer.parseAddress(args[0]);
+        else{
+            server = new KnapsackServer(MerkleHellmanKnapsackCryptosystem.generateKeys(IN_PROCESS_KEY_SIZE),
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            address = server.getAddress();
+        }
+        try{
+            if(server != null){
+                checkLargestMessage(address, server.getMaxEncryptBytes());
+                System.out.println("Round trip of " + server.getMaxEncryptBytes() + " bytes, the largest message the server encrypts, ok");
+            }
+            System.out.println("connections, roundTripsPerSec, p50Us, p99Us");
+            for(int connections=1; connections<=maxConnections; connections*=2)
+                System.out.println(run(address, connections, requests, messageLength));
+        }
+        finally{
+            if(server != null)
+                server.close();
+        }
+    }
+}
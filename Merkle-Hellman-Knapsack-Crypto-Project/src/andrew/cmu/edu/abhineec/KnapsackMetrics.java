@@ -0,0 +1,252 @@
+package andrew.cmu.edu.abhineec;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/******************************************************************************
+ * KnapsackMetrics counts the calls, failures and bytes processed of the crypto operations
+ * and keeps a latency histogram of each, with one bucket per power of two nanoseconds.
+ * Counters are LongAdders, so threads updating them at once do not contend.
+ * Measuring is off by default (or on with -Dknapsack.metrics=true); while it is off an
+ * instrumented operation only reads a static volatile flag. ENCRYPT and DECRYPT count every
+ * public call once, whether it handles a message, a batch of records or a whole stream, with
+ * the bytes of plain text it handled (padding excluded); a call that throws counts as a failure.
+ * GREEDY_DECOMPOSE counts every block decrypted with BigInteger arithmetic. The single instance is
+ * published to JMX by register() and its dump() is also available in code
+ ******************************************************************************/
+public final class KnapsackMetrics implements KnapsackMetricsMBean {
+    //name under which register() publishes the metrics
+    public static final String OBJECT_NAME = "andrew.cmu.edu.abhineec:type=KnapsackMetrics";
+    private static final int BUCKETS = 64;
+    private static final KnapsackMetrics INSTANCE = new KnapsackMetrics();
+    private static volatile boolean enabled = Boolean.getBoolean("knapsack.metrics");
+
+    /**
+     * The measured operations
+     **/
+    public enum Operation {
+        GENERATE_KEYS, ENCRYPT, DECRYPT, GREEDY_DECOMPOSE
+    }
+
+    private final LongAdder[] counts = newAdders(Operation.values().length);
+    private final LongAdder[] failures = newAdders(Operation.values().length);
+    private final LongAdder[] bytes = newAdders(Operation.values().length);
+    private final LongAdder[][] histograms = new LongAdder[Operation.values().length][];
+
+    private KnapsackMetrics(){
+        for(int i=0; i<histograms.length; i++)
+            histograms[i] = newAdders(BUCKETS);
+    }
+
+    /**
+     * Returns the single instance of KnapsackMetrics
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public static KnapsackMetrics getInstance(){
+        return INSTANCE;
+    }
+
+    /**
+     * Method used to publish the metrics to the platform MBean server under OBJECT_NAME,
+     * calling it again does nothing
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public static synchronized void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if(!server.isRegistered(name))
+            server.registerMBean(INSTANCE, name);
+    }
+
+    /**
+     * Method used to start measuring an operation
+     * @return
+     *   the start time to hand to record, or 0 when measuring is off
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    static long start(){
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Method used to record a completed operation that began at start and processed byteCount bytes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    static void record(Operation operation, long start, long byteCount){
+        if(start == 0)
+            return;
+        long nanos = Math.max(System.nanoTime() - start, 1);
+        int index = operation.ordinal();
+        INSTANCE.counts[index].increment();
+        INSTANCE.bytes[index].add(byteCount);
+        INSTANCE.histograms[index][63 - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    /**
+     * Method used to record a failed operation
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    static void recordFailure(Operation operation){
+        if(enabled)
+            INSTANCE.failures[operation.ordinal()].increment();
+    }
+
+    @Override
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled){
+        KnapsackMetrics.enabled = enabled;
+    }
+
+    @Override
+    public long getGenerateKeysCount(){
+        return getCount(Operation.GENERATE_KEYS);
+    }
+
+    @Override
+    public long getEncryptCount(){
+        return getCount(Operation.ENCRYPT);
+    }
+
+    @Override
+    public long getDecryptCount(){
+        return getCount(Operation.DECRYPT);
+    }
+
+    @Override
+    public long getGreedyDecomposeCount(){
+        return getCount(Operation.GREEDY_DECOMPOSE);
+    }
+
+    @Override
+    public long getEncryptedBytes(){
+        return bytes[Operation.ENCRYPT.ordinal()].sum();
+    }
+
+    @Override
+    public long getDecryptedBytes(){
+        return bytes[Operation.DECRYPT.ordinal()].sum();
+    }
+
+    @Override
+    public long getFailureCount(){
+        long sum = 0;
+        for(LongAdder failure: failures)
+            sum += failure.sum();
+        return sum;
+    }
+
+    /**
+     * Returns the number of completed calls of operation
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getCount(Operation operation){
+        return counts[operation.ordinal()].sum();
+    }
+
+    @Override
+    public double latencyMicros(String operation, double fraction){
+        return latencyMicros(Operation.valueOf(operation), fraction);
+    }
+
+    /**
+     * Returns the upper bound (in microseconds) of the histogram bucket holding the given
+     * fraction of the calls of operation, 0 when it was not measured yet
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)   [BUCKETS buckets]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public double latencyMicros(Operation operation, double fraction){
+        LongAdder[] histogram = histograms[operation.ordinal()];
+        long[] bucketCounts = new long[BUCKETS];
+        long total = 0;
+        for(int i=0; i<BUCKETS; i++){
+            bucketCounts[i] = histogram[i].sum();
+            total += bucketCounts[i];
+        }
+        if(total == 0)
+            return 0;
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for(int i=0; i<BUCKETS; i++){
+            seen += bucketCounts[i];
+            if(seen >= rank)
+                return Math.pow(2, i + 1) / 1e3;
+        }
+        return Math.pow(2, BUCKETS) / 1e3;
+    }
+
+    @Override
+    public String dump(){
+        StringBuilder dump = new StringBuilder();
+        dump.append(String.format("%-16s %10s %8s %14s %10s %10s %10s%n",
+                "operation", "count", "failures", "bytes", "p50Us", "p99Us", "maxUs"));
+        for(Operation operation: Operation.values()){
+            int index = operation.ordinal();
+            dump.append(String.format("%-16s %10d %8d %14d %10.1f %10.1f %10.1f%n", operation,
+                    counts[index].sum(), failures[index].sum(), bytes[index].sum(),
+                    latencyMicros(operation, 0.5), latencyMicros(operation, 0.99), latencyMicros(operation, 1.0)));
+        }
+        return dump.toString();
+    }
+
+    @Override
+    public void reset(){
+        for(int i=0; i<counts.length; i++){
+            counts[i].reset();
+            failures[i].reset();
+            bytes[i].reset();
+            for(LongAdder bucket: histograms[i])
+                bucket.reset();
+        }
+    }
+
+    /**
+     * Helper function creating an array of zeroed LongAdders
+     **/
+    private static LongAdder[] newAdders(int length){
+        LongAdder[] adders = new LongAdder[length];
+        for(int i=0; i<length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+}
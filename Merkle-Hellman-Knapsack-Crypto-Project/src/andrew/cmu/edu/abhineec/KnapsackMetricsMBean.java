@@ -0,0 +1,69 @@
+package andrew.cmu.edu.abhineec;
+
+/******************************************************************************
+ * KnapsackMetricsMBean is the management interface under which KnapsackMetrics
+ * is published to JMX, see KnapsackMetrics.register()
+ ******************************************************************************/
+public interface KnapsackMetricsMBean {
+
+    /**
+     * Returns true if the crypto operations are being measured
+     **/
+    boolean isEnabled();
+
+    /**
+     * Method used to switch measuring the crypto operations on or off
+     **/
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the number of completed generatePublicKeys calls
+     **/
+    long getGenerateKeysCount();
+
+    /**
+     * Returns the number of completed encrypt calls
+     **/
+    long getEncryptCount();
+
+    /**
+     * Returns the number of completed decrypt calls
+     **/
+    long getDecryptCount();
+
+    /**
+     * Returns the number of completed greedy decompositions
+     **/
+    long getGreedyDecomposeCount();
+
+    /**
+     * Returns the number of plain text bytes encrypted
+     **/
+    long getEncryptedBytes();
+
+    /**
+     * Returns the number of plain text bytes decrypted
+     **/
+    long getDecryptedBytes();
+
+    /**
+     * Returns the number of failed operations of any kind
+     **/
+    long getFailureCount();
+
+    /**
+     * Returns the latency (in microseconds) below which the given fraction of the calls
+     * of operation completed, e.g. latencyMicros("DECRYPT", 0.99)
+     **/
+    double latencyMicros(String operation, double fraction);
+
+    /**
+     * Returns every counter and latency percentile as text
+     **/
+    String dump();
+
+    /**
+     * Method used to zero every counter and histogram
+     **/
+    void reset();
+}
@@ -0,0 +1,178 @@
+package andrew.cmu.edu.abhineec;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+
+/******************************************************************************
+ * KnapsackMicroBenchmark measures key generation, encryption and decryption of the
+ * MerkleHellmanKnapsackCryptosystem across key sizes and message lengths in the manner of
+ * a JMH benchmark: every benchmark runs timed warmup iterations followed by timed measured
+ * iterations, the results of each operation are consumed by a volatile sink so the JIT
+ * cannot drop them, and the report gives the throughput in ops/sec (mean ± standard deviation
+ * of the measured iterations) together with the allocation rate of the benchmark thread.
+ * Small knapsacks of 56 elements, whose q fits in 63 bits and which therefore run on the long
+ * arithmetic of LongKnapsackEngine, are measured next to 64 element ones that do not fit.
+ * Usage: java andrew.cmu.edu.abhineec.KnapsackMicroBenchmark [keySize ...]
+ ******************************************************************************/
+public class KnapsackMicroBenchmark {
+    private static final int[] DEFAULT_KEY_SIZES = {641, 4096, 16384};
+    private static final int SHORT_MESSAGE_LENGTH = 16;
+    private static final int[] SMALL_KEY_SIZES = {56, 64};
+    //bits of the random increment of the elements of a small knapsack
+    private static final int SMALL_INCREMENT_BITS = 4;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500_000_000L;
+
+    //consumes the result of every operation
+    private static volatile int sink;
+
+    /**
+     * A single benchmarked operation, returning its result for the sink
+     **/
+    private interface Operation {
+        Object run() throws Exception;
+    }
+
+    /**
+     * Helper function returning the bytes allocated so far by the current thread, -1 when
+     * the JVM does not track allocations per thread
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static long allocatedBytes(){
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(!(threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if(!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return allocations.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Helper function running operation for ITERATION_NANOS, at least once
+     * @return
+     *   a two element array holding the number of operations and the elapsed nanoseconds
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(k)   [k being the operations that fit in an iteration]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(k)
+     */
+    private static long[] iteration(Operation operation) throws Exception {
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do{
+            sink ^= operation.run().hashCode();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        }while(elapsed < ITERATION_NANOS);
+        return new long[]{operations, elapsed};
+    }
+
+    /**
+     * Helper function running the warmup and measured iterations of a benchmark
+     * @return
+     *   a report line: benchmark, keySize, messageLength, ops/sec, error, allocation MB/sec, bytes/op
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(i * k)   [i being the iterations]
+            Big-Omega: Ω(i)
+            Big-Theta: Θ(i * k)
+     */
+    private static String measure(String name, int keySize, int messageLength, Operation operation) throws Exception {
+        for(int i=0; i<WARMUP_ITERATIONS; i++)
+            iteration(operation);
+        double[] throughput = new double[MEASURED_ITERATIONS];
+        long operations = 0, nanos = 0;
+        long allocatedBefore = allocatedBytes();
+        for(int i=0; i<MEASURED_ITERATIONS; i++){
+            long[] result = iteration(operation);
+            throughput[i] = result[0] * 1e9 / result[1];
+            operations += result[0];
+            nanos += result[1];
+        }
+        long allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+
+        double mean = 0, variance = 0;
+        for(double value: throughput)
+            mean += value / MEASURED_ITERATIONS;
+        for(double value: throughput)
+            variance += (value - mean) * (value - mean) / (MEASURED_ITERATIONS - 1);
+        String allocation = allocated < 0 ? "-, -"
+                : String.format("%.1f, %d", allocated / 1e6 / (nanos / 1e9), allocated / operations);
+        return String.format("%s, %d, %d, %.1f, %.1f, %s", name, keySize, messageLength, mean, Math.sqrt(variance), allocation);
+    }
+
+    /**
+     * Helper function creating the keys of a small knapsack, where every element of w
+     * is the sum of all elements before it plus 1 plus a random increment of SMALL_INCREMENT_BITS bits
+     * @return
+     *   a MerkleHellmanKnapsackCryptosystem holding the new private and public keys
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static MerkleHellmanKnapsackCryptosystem smallKnapsack(int size, Random random) throws Exception {
+        MerkleHellmanKnapsackCryptosystem cryptosystem = new MerkleHellmanKnapsackCryptosystem();
+        BigInteger sum = BigInteger.ZERO;
+        for(int i=0; i<size; i++){
+            BigInteger wi = sum.add(BigInteger.ONE).add(new BigInteger(SMALL_INCREMENT_BITS, random));
+            cryptosystem.addBigIntegerToW(wi);
+            sum = sum.add(wi);
+        }
+        cryptosystem.generatePublicKeys(random);
+        return cryptosystem;
+    }
+
+    /**
+     * Main function running every benchmark for every key size and printing one report line each
+     **/
+    public static void main(String[] args) throws Exception {
+        int[] keySizes = DEFAULT_KEY_SIZES;
+        if(args.length > 0){
+            keySizes = new int[args.length];
+            for(int i=0; i<args.length; i++)
+                keySizes[i] = Integer.parseInt(args[i]);
+        }
+        System.out.println("benchmark, keySize, messageLength, opsPerSec, error, allocMBPerSec, bytesPerOp");
+        for(int keySize: SMALL_KEY_SIZES){
+            Random random = new Random(keySize);
+            MerkleHellmanKnapsackCryptosystem cryptosystem = smallKnapsack(keySize, random);
+            byte[] message = new byte[cryptosystem.getBlockSize() - 1];
+            random.nextBytes(message);
+            List<BigInteger> cipherBlocks = cryptosystem.encryptBytes(message);
+            String arithmetic = cryptosystem.getPrivateKey().usesLongArithmetic() ? "long" : "BigInteger";
+            System.out.println(measure("encrypt(" + arithmetic + ")", keySize, message.length, () -> cryptosystem.encryptBytes(message)));
+            System.out.println(measure("decrypt(" + arithmetic + ")", keySize, message.length, () -> cryptosystem.decryptBytes(cipherBlocks)));
+        }
+        for(int keySize: keySizes){
+            final Random random = new Random(keySize);
+            System.out.println(measure("generateKeys", keySize, 0,
+                    () -> MerkleHellmanKnapsackCryptosystem.generateKeys(keySize, random)));
+
+            MerkleHellmanKnapsackCryptosystem cryptosystem = MerkleHellmanKnapsackCryptosystem.generateKeys(keySize, random);
+            int[] messageLengths = {SHORT_MESSAGE_LENGTH, cryptosystem.getBlockSize() - 1, cryptosystem.getBlockSize() * 16};
+            for(int messageLength: messageLengths){
+                byte[] message = new byte[messageLength];
+                random.nextBytes(message);
+                List<BigInteger> cipherBlocks = cryptosystem.encryptBytes(message);
+                System.out.println(measure("encrypt", keySize, messageLength, () -> cryptosystem.encryptBytes(message)));
+                System.out.println(measure("decrypt", keySize, messageLength, () -> cryptosystem.decryptBytes(cipherBlocks)));
+            }
+        }
+    }
+}
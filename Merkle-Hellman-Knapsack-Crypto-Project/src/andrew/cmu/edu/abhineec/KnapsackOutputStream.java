@@ -0,0 +1,183 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/******************************************************************************
+ * KnapsackOutputStream encrypts the binary data written to it block by block with a
+ * KnapsackPublicKey and writes every cipher value to the underlying stream, framed as an
+ * int length followed by its two's-complement bytes (see KnapsackCipherText).
+ * Only a single block of plain text is buffered, so data of any size is encrypted at
+ * constant memory. The last, padded block is written by close(), after which the frames
+ * written equal those of KnapsackPublicKey.encrypt for the whole data. For KnapsackMetrics
+ * a stream is a single encryption of all bytes written to it, timed from creation to close().
+ * Objects of this class are not safe for use by several threads at once
+ ******************************************************************************/
+public class KnapsackOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final KnapsackPublicKey key;
+    private final byte[] block;
+    //reused for every block, see KnapsackPublicKey.newAccumulator
+    private final LimbAccumulator accumulator;
+    private int count;
+    private boolean closed;
+    private final long start;
+    private long written;
+
+    /**
+     * Initialize a KnapsackOutputStream writing the cipher text of the data written to it to out
+     * @postcondition
+     *   A KnapsackOutputStream holding an empty block of key.getBlockSize() bytes and the
+     *   accumulator its blocks are encrypted with is initialized
+     **/
+    public KnapsackOutputStream(OutputStream out, KnapsackPublicKey key){
+        this.out = out;
+        this.key = key;
+        this.block = new byte[key.getBlockSize()];
+        this.accumulator = key.newAccumulator();
+        this.start = KnapsackMetrics.start();
+    }
+
+    /**
+     * Method used to wrap a channel so that the data written to the returned channel
+     * is encrypted into target, closing the returned channel writes the padding block
+     * @return
+     *   a WritableByteChannel encrypting into target
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public static WritableByteChannel newChannel(WritableByteChannel target, KnapsackPublicKey key){
+        return Channels.newChannel(new KnapsackOutputStream(Channels.newOutputStream(target), key));
+    }
+
+    /**
+     * Method used to write a single byte, encrypting the block when it is full
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [when the block is full, O(1) otherwise]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1) amortized
+     */
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        written++;
+        if(count == block.length)
+            writeBlock();
+    }
+
+    /**
+     * Method used to write len bytes of data starting at off, encrypting every block that fills up
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(len)
+            Big-Omega: Ω(len)
+            Big-Theta: Θ(len)
+     */
+    @Override
+    public void write(byte[] data, int off, int len) throws IOException {
+        ensureOpen();
+        if(off < 0 || len < 0 || len > data.length - off)
+            throw new IndexOutOfBoundsException();
+        while(len > 0){
+            int copied = Math.min(len, block.length - count);
+            System.arraycopy(data, off, block, count, copied);
+            count += copied;
+            written += copied;
+            off += copied;
+            len -= copied;
+            if(count == block.length)
+                writeBlock();
+        }
+    }
+
+    /**
+     * Method used to flush the cipher values written so far to the underlying stream.
+     * Bytes of a block that is not full yet stay buffered until the block fills up or the stream is closed
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        out.flush();
+    }
+
+    /**
+     * Method used to write the last, padded block and close the underlying stream
+     * @postcondition
+     *   the cipher text is complete, further writes fail and further closes do nothing
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        try(OutputStream target = out){
+            //count is always less than the block size here, so this block carries the padding
+            KnapsackCipherText.writeBlock(target, encryptBlock());
+        }
+        KnapsackMetrics.record(KnapsackMetrics.Operation.ENCRYPT, start, written);
+    }
+
+    /**
+     * Helper function encrypting the full block and writing its cipher value
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private void writeBlock() throws IOException {
+        KnapsackCipherText.writeBlock(out, encryptBlock());
+        count = 0;
+    }
+
+    /**
+     * Helper function encrypting the buffered block, counting a failure of the stream
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private BigInteger encryptBlock(){
+        try{
+            return key.encryptBuffer(block, count, accumulator);
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.ENCRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Helper function failing when the stream is closed
+     **/
+    private void ensureOpen() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+    }
+}
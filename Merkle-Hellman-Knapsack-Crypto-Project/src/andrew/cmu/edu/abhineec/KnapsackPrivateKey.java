@@ -0,0 +1,512 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/******************************************************************************
+ * KnapsackPrivateKey holds the private key (w, q, r) of the Merkle–Hellman knapsack
+ * cryptosystem and decrypts the cipher values produced by the matching KnapsackPublicKey.
+ * Objects of this class are immutable, r⁻¹ mod q is derived once when the key is created,
+ * so a single key can be shared by any number of threads without locking
+ ******************************************************************************/
+public final class KnapsackPrivateKey {
+    //number of blocks below which a fork/join task stops splitting and decrypts sequentially
+    private static final int BLOCKS_PER_TASK = 8;
+
+    private final KnapsackSequence w;
+    private final BigInteger q;
+    private final BigInteger r;
+    //modular inverse of r modulo q, computed once with the key instead of on every decryption
+    private final BigInteger rModInvq;
+    //w, q and r⁻¹ mod q as longs when q fits in 63 bits, see LongKnapsackEngine
+    private final long[] longW;
+    private final long longQ;
+    private final long longRModInvq;
+    //w itself when it is held outside the heap, decryption then works on its limbs straight from the buffer
+    private final OffHeapKnapsackSequence offHeapW;
+
+    /**
+     * Initialize a KnapsackPrivateKey holding a copy of w together with q and r
+     * @precondition
+     *   w is a super increasing sequence of at least 8 elements whose sum is less than q,
+     *   r is coprime to q
+     * @postcondition
+     *   A KnapsackPrivateKey is initialized and r⁻¹ mod q is computed
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public KnapsackPrivateKey(BigInteger[] w, BigInteger q, BigInteger r){
+        //calculate modular inverse of r modulo q
+        this(new ArrayKnapsackSequence(w.clone()), q, r, r.modInverse(q));
+    }
+
+    /**
+     * Initialize a KnapsackPrivateKey over the elements of w with an already known r⁻¹ mod q,
+     * e.g. read from a key file
+     * @precondition
+     *   w is a super increasing sequence of at least 8 elements whose sum is less than q,
+     *   rModInvq * r mod q is 1
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    KnapsackPrivateKey(KnapsackSequence w, BigInteger q, BigInteger r, BigInteger rModInvq){
+        if(w.size() < 8)
+            throw new IllegalArgumentException("Private key must hold at least 8 elements");
+        this.w = w;
+        this.q = q;
+        this.r = r;
+        this.rModInvq = rModInvq;
+        //every element of w is below q, so w fits whenever q does
+        this.longW = q.bitLength() <= 63 ? LongKnapsackEngine.toLongs(w) : null;
+        this.longQ = q.longValue();
+        this.longRModInvq = rModInvq.longValue();
+        this.offHeapW = w instanceof OffHeapKnapsackSequence ? (OffHeapKnapsackSequence) w : null;
+    }
+
+    /**
+     * Returns the number of elements in the private key
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getSize(){
+        return w.size();
+    }
+
+    /**
+     * Returns the element of w at position index
+     * @precondition
+     * index should be between 0 and the size of w
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public BigInteger getValueAt(int index){
+        return w.get(index);
+    }
+
+    /**
+     * Returns the modulus q
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public BigInteger getQ(){
+        return q;
+    }
+
+    /**
+     * Returns the multiplier r
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public BigInteger getR(){
+        return r;
+    }
+
+    /**
+     * Method used to copy w into a direct buffer outside the heap
+     * @postcondition
+     *   this key remains as is
+     * @return
+     *   a KnapsackPrivateKey with the same q and r holding w off heap
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public KnapsackPrivateKey toOffHeap(){
+        return new KnapsackPrivateKey(OffHeapKnapsackSequence.allocate(w), q, r, rModInvq);
+    }
+
+    /**
+     * Method used to copy w into file and map it into memory
+     * @postcondition
+     *   file holds w, replacing any previous content, this key remains as is
+     * @return
+     *   a KnapsackPrivateKey with the same q and r holding w in the mapped file
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public KnapsackPrivateKey toOffHeap(Path file) throws IOException {
+        return new KnapsackPrivateKey(OffHeapKnapsackSequence.map(w, file), q, r, rModInvq);
+    }
+
+    /**
+     * Returns true if w is held outside the heap
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public boolean isOffHeap(){
+        return offHeapW != null;
+    }
+
+    /**
+     * Returns r⁻¹ mod q
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public BigInteger getRModInvq(){
+        return rModInvq;
+    }
+
+    /**
+     * Returns true if q fits in 63 bits, so that this key decrypts
+     * with the primitive long arithmetic of LongKnapsackEngine
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public boolean usesLongArithmetic(){
+        return longW != null;
+    }
+
+    /**
+     * Returns the number of bytes that fit in a single knapsack block
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getBlockSize(){
+        return w.size() / 8;
+    }
+
+    /**
+     * Method used to decrypt the cipher values produced by KnapsackPublicKey.encrypt,
+     * writing the recovered bits straight into the returned byte array
+     * @precondition
+     * cipherBlocks holds, in order, every block returned by the matching public key
+     * @postcondition
+     *   object remains as is; the original data with the padding removed is returned
+     * @return
+     *  a byte array containing the original data
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public byte[] decrypt(List<BigInteger> cipherBlocks){
+        long start = KnapsackMetrics.start();
+        try{
+            int blockSize = getBlockSize();
+            byte[] paddedMessage = new byte[checkedNumberOfBlocks(cipherBlocks) * blockSize];
+            for(int block=0; block<cipherBlocks.size(); block++)
+                decryptBlock(cipherBlocks.get(block), paddedMessage, block * blockSize, blockSize);
+            byte[] message = removePadding(paddedMessage);
+            KnapsackMetrics.record(KnapsackMetrics.Operation.DECRYPT, start, message.length);
+            return message;
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.DECRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Method used to decrypt the cipher values produced by KnapsackPublicKey.encrypt,
+     * spreading the blocks across the threads of pool
+     * @return
+     *  a byte array containing the original data
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being the parallelism of pool]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public byte[] decrypt(List<BigInteger> cipherBlocks, ForkJoinPool pool){
+        long start = KnapsackMetrics.start();
+        try{
+            int blockSize = getBlockSize();
+            byte[] paddedMessage = new byte[checkedNumberOfBlocks(cipherBlocks) * blockSize];
+            pool.invoke(new DecryptBlocksTask(cipherBlocks, blockSize, paddedMessage, 0, cipherBlocks.size()));
+            byte[] message = removePadding(paddedMessage);
+            KnapsackMetrics.record(KnapsackMetrics.Operation.DECRYPT, start, message.length);
+            return message;
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.DECRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Method used to decrypt a batch of cipher values produced by KnapsackPublicKey.encryptAll,
+     * recovering every record in a single scratch block reused across the batch
+     * @postcondition
+     *   object remains as is; the records are returned in the order of cipherValues
+     * @return
+     *  an array holding the original data of every record
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)   [m being the number of records]
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    public byte[][] decryptAll(BigInteger[] cipherValues){
+        long start = KnapsackMetrics.start();
+        try{
+            byte[] scratch = new byte[getBlockSize()];
+            byte[][] records = new byte[cipherValues.length][];
+            long bytes = 0;
+            for(int i=0; i<cipherValues.length; i++){
+                records[i] = Arrays.copyOf(scratch, decryptRecord(cipherValues[i], scratch));
+                bytes += records[i].length;
+            }
+            KnapsackMetrics.record(KnapsackMetrics.Operation.DECRYPT, start, bytes);
+            return records;
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.DECRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Method used to decrypt a single padded block into scratch, which may be reused across calls.
+     * Part of a batch, so the caller records the metrics
+     * @precondition
+     *   scratch holds getBlockSize() bytes
+     * @postcondition
+     *   the record is held by the start of scratch
+     * @return
+     *  the length of the record
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    int decryptRecord(BigInteger cipherValue, byte[] scratch){
+        Arrays.fill(scratch, (byte) 0);
+        decryptBlock(cipherValue, scratch, 0, scratch.length);
+        return paddingStart(scratch);
+    }
+
+    /**
+     * Method used to decrypt a single block into buffer, which may be reused across calls,
+     * leaving any padding in place. Part of a stream, so KnapsackInputStream records the metrics
+     * @precondition
+     *   buffer holds getBlockSize() bytes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    void decryptBuffer(BigInteger cipherValue, byte[] buffer){
+        Arrays.fill(buffer, (byte) 0);
+        decryptBlock(cipherValue, buffer, 0, buffer.length);
+    }
+
+    /**
+     * Returns the largest number of bytes the two's-complement form of a cipher value of
+     * this key takes, i.e. of a sum of getSize() elements below q
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    int getMaxCipherValueBytes(){
+        int bits = q.bitLength() + (32 - Integer.numberOfLeadingZeros(w.size()));
+        return bits / 8 + 1;
+    }
+
+    /**
+     * Fork/join task decrypting the cipher values [from, to) into their blocks of paddedMessage,
+     * halving the range until it holds at most BLOCKS_PER_TASK blocks
+     **/
+    private class DecryptBlocksTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        //fork/join tasks are never serialized, and List is not Serializable
+        private final transient List<BigInteger> cipherBlocks;
+        private final int blockSize;
+        private final byte[] paddedMessage;
+        private final int from;
+        private final int to;
+
+        DecryptBlocksTask(List<BigInteger> cipherBlocks, int blockSize, byte[] paddedMessage, int from, int to){
+            this.cipherBlocks = cipherBlocks;
+            this.blockSize = blockSize;
+            this.paddedMessage = paddedMessage;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= BLOCKS_PER_TASK){
+                for(int block=from; block<to; block++)
+                    decryptBlock(cipherBlocks.get(block), paddedMessage, block * blockSize, blockSize);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecryptBlocksTask(cipherBlocks, blockSize, paddedMessage, from, middle),
+                    new DecryptBlocksTask(cipherBlocks, blockSize, paddedMessage, middle, to));
+        }
+    }
+
+    /**
+     * Helper function returning the number of blocks, failing when the padding block is missing
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static int checkedNumberOfBlocks(List<BigInteger> cipherBlocks){
+        if(cipherBlocks.isEmpty())
+            throw new IllegalArgumentException("Block mode cipher text holds at least the padding block");
+        return cipherBlocks.size();
+    }
+
+    /**
+     * Helper function to strip the 0x80 0x00... padding added by the public key
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static byte[] removePadding(byte[] paddedMessage){
+        return Arrays.copyOf(paddedMessage, paddingStart(paddedMessage));
+    }
+
+    /**
+     * Helper function returning the position of the 0x80 padding marker
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(n)
+     */
+    static int paddingStart(byte[] paddedMessage){
+        int end = paddedMessage.length - 1;
+        while(end >= 0 && paddedMessage[end] == 0)
+            end--;
+        if(end < 0 || paddedMessage[end] != (byte) 0x80)
+            throw new IllegalArgumentException("Cipher text does not end with a valid padding block");
+        return end;
+    }
+
+    /**
+     * Helper function to recover lengthInBytes bytes of a message from its knapsack sum,
+     * setting the recovered bits directly in message starting at offset
+     * @precondition
+     *   message[offset, offset + lengthInBytes) is zeroed
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private void decryptBlock(BigInteger cipherValue, byte[] message, int offset, int lengthInBytes){
+        if(longW != null){
+            LongKnapsackEngine.decryptBlock(longW, longQ, longRModInvq, cipherValue, message, offset, lengthInBytes);
+            return;
+        }
+        //calculate c_dash as c * rModInvq mod q
+        BigInteger c_dash = cipherValue.multiply(rModInvq).mod(q);
+        //Find the elements of W which sum to c_dash and set their bits in message
+        long start = KnapsackMetrics.start();
+        if(offHeapW != null)
+            offHeapW.greedyDecompose(c_dash, lengthInBytes * 8, message, offset);
+        else
+            greedyDecompose(c_dash, lengthInBytes * 8, message, offset);
+        KnapsackMetrics.record(KnapsackMetrics.Operation.GREEDY_DECOMPOSE, start, lengthInBytes);
+    }
+
+    /**
+     * Helper function to use greedy approach to find the positions in
+     * the first lengthOfBinaryMessage elements of w that sum upto c_dash.
+     * The bit of every position found is set in message, counting bits from
+     * the most significant bit of message[offset]
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private void greedyDecompose(BigInteger c_dash, int lengthOfBinaryMessage, byte[] message, int offset){
+        //w is increasing, so binary search the last element not above c_dash instead of
+        //comparing c_dash with every element of a short message's unused tail
+        int low = 0, high = lengthOfBinaryMessage;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(c_dash.compareTo(w.get(middle)) >= 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        int tailIndex = low-1;
+        while(tailIndex>=0){
+            BigInteger wi = w.get(tailIndex);
+            if(c_dash.compareTo(wi)>=0){
+                message[offset + (tailIndex >>> 3)] |= (byte) (0x80 >>> (tailIndex & 7));
+                c_dash = c_dash.subtract(wi);
+                if(c_dash.signum()==0)
+                    return;
+            }
+            tailIndex--;
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/******************************************************************************
+ * KnapsackPublicKey holds the public key b of the Merkle–Hellman knapsack cryptosystem
+ * and encrypts with it. Objects of this class are immutable, so a single key can be
+ * shared by any number of threads without locking.
+ * Messages are split into blocks of getBlockSize() bytes and each block is encrypted into
+ * its own cipher value. The last block is padded with a single 0x80 marker byte followed by
+ * 0x00 bytes (ISO/IEC 7816-4 padding), hence the cipher text itself carries the message length
+ * and a message whose length is a multiple of getBlockSize() gets an extra block holding only padding
+ ******************************************************************************/
+public final class KnapsackPublicKey {
+    //number of blocks below which a fork/join task stops splitting and encrypts sequentially
+    private static final int BLOCKS_PER_TASK = 8;
+    //approximate heap footprint of a BigInteger object and of an array header, used to size the encryption table
+    private static final long BIG_INTEGER_BYTES = 40;
+    private static final long ARRAY_HEADER_BYTES = 16;
+
+    private final KnapsackSequence b;
+    //the elements of b as longs when they all fit in 63 bits, see LongKnapsackEngine
+    private final long[] longB;
+    //otherwise encryption adds the limbs of b, as stored by b, into a LimbAccumulator of this many limbs per element
+    private final int limbsPerElement;
+    //optional table of the 256 possible sums of b for every byte position of a block
+    private final BigInteger[][] encryptionTable;
+    private final long encryptionTableBytes;
+
+    /**
+     * Initialize a KnapsackPublicKey holding a copy of b, as a single array of 32 bit limbs
+     * unless every element fits in 63 bits and encryption takes them as longs
+     * @precondition
+     *   b holds at least 8 elements
+     * @postcondition
+     *   A KnapsackPublicKey without encryption table is initialized
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public KnapsackPublicKey(BigInteger[] b){
+        this(heapSequence(b));
+    }
+
+    /**
+     * Initialize a KnapsackPublicKey over the elements of b, e.g. read from a key file
+     * @precondition
+     *   b holds at least 8 elements
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    KnapsackPublicKey(KnapsackSequence b){
+        this(b, LongKnapsackEngine.toLongs(b), null, 0);
+        if(b.size() < 8)
+            throw new IllegalArgumentException("Public key must hold at least 8 elements");
+    }
+
+    private KnapsackPublicKey(KnapsackSequence b, long[] longB, BigInteger[][] encryptionTable, long encryptionTableBytes){
+        this.b = b;
+        this.longB = longB;
+        this.limbsPerElement = longB == null ? b.limbsPerElement() : 0;
+        this.encryptionTable = encryptionTable;
+        this.encryptionTableBytes = encryptionTableBytes;
+    }
+
+    /**
+     * Returns the number of elements in the public key
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getSize(){
+        return b.size();
+    }
+
+    /**
+     * Returns the element of b at position index
+     * @precondition
+     * index should be between 0 and the size of b
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public BigInteger getValueAt(int index){
+        return b.get(index);
+    }
+
+    /**
+     * Returns the number of bytes that fit in a single knapsack block,
+     * i.e. the number of whole bytes covered by b
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getBlockSize(){
+        return b.size() / 8;
+    }
+
+    /**
+     * Returns an estimate of the heap memory (in bytes) the encryption table would take
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public long estimateEncryptionTableBytes(){
+        int maxBitLength = 0;
+        for(int i=0; i<b.size(); i++)
+            maxBitLength = Math.max(maxBitLength, b.get(i).bitLength());
+        //every entry is a sum of at most 8 elements of b
+        long bytesPerEntry = estimateBytes(maxBitLength + 3) + 4;
+        return (long) getBlockSize() * (ARRAY_HEADER_BYTES + 256 * bytesPerEntry);
+    }
+
+    /**
+     * Method used to precompute, for each byte position of a block, the 256 possible
+     * sums of the 8 elements of b that position selects. With the table encryption adds a
+     * single table entry per byte instead of upto 8 elements of b
+     * @param maxBytes
+     *   upper bound on the heap memory the table may take
+     * @postcondition
+     *   this key remains as is
+     * @return
+     *   a KnapsackPublicKey with the same b and an encryption table, or this key
+     *   when estimateEncryptionTableBytes() exceeds maxBytes or the table is already built
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [256 additions per byte position]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public KnapsackPublicKey withEncryptionTable(long maxBytes){
+        if(encryptionTable != null || estimateEncryptionTableBytes() > maxBytes)
+            return this;
+        BigInteger[][] table = new BigInteger[getBlockSize()][];
+        long tableBytes = 0;
+        for(int slot=0; slot<table.length; slot++){
+            BigInteger[] sums = new BigInteger[256];
+            sums[0] = BigInteger.ZERO;
+            //each sum extends an already computed sum by the element of b of its lowest set bit
+            for(int value=1; value<256; value++){
+                int lowestBit = Integer.numberOfTrailingZeros(value);
+                sums[value] = sums[value & (value - 1)].add(b.get(slot * 8 + 7 - lowestBit));
+                tableBytes += estimateBytes(sums[value].bitLength());
+            }
+            table[slot] = sums;
+            tableBytes += ARRAY_HEADER_BYTES + 256 * 4;
+        }
+        return new KnapsackPublicKey(b, longB, table, tableBytes);
+    }
+
+    /**
+     * Method used to copy b into a direct buffer outside the heap, so that a large key
+     * neither fills the heap nor adds to the work of the garbage collector
+     * @postcondition
+     *   this key remains as is
+     * @return
+     *   a KnapsackPublicKey holding the same b off heap, without encryption table
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public KnapsackPublicKey toOffHeap(){
+        return new KnapsackPublicKey(OffHeapKnapsackSequence.allocate(b));
+    }
+
+    /**
+     * Method used to copy b into file and map it into memory, so that the operating system
+     * pages the key in and out of memory as it is used
+     * @postcondition
+     *   file holds b, replacing any previous content, this key remains as is
+     * @return
+     *   a KnapsackPublicKey holding the same b in the mapped file, without encryption table
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public KnapsackPublicKey toOffHeap(Path file) throws IOException {
+        return new KnapsackPublicKey(OffHeapKnapsackSequence.map(b, file));
+    }
+
+    /**
+     * Returns true if b is held outside the heap
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public boolean isOffHeap(){
+        return b instanceof OffHeapKnapsackSequence;
+    }
+
+    /**
+     * Returns true if every element of b fits in 63 bits, so that this key encrypts
+     * with the primitive long arithmetic of LongKnapsackEngine
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public boolean usesLongArithmetic(){
+        return longB != null;
+    }
+
+    /**
+     * Returns true if this key encrypts through the encryption table
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public boolean hasEncryptionTable(){
+        return encryptionTable != null;
+    }
+
+    /**
+     * Returns the estimated heap memory (in bytes) held by the encryption table, 0 when it is not built
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getEncryptionTableBytes(){
+        return encryptionTableBytes;
+    }
+
+    /**
+     * Method used to encrypt binary data of any length in block mode,
+     * reading the bits straight from message
+     * @postcondition
+     *   object remains as is; the list of cipher values (one per block) is returned
+     * @return
+     *  a list of BigIntegers, each holding the encrypted value of one block
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public List<BigInteger> encrypt(byte[] message){
+        long start = KnapsackMetrics.start();
+        try{
+            int blockSize = getBlockSize();
+            BigInteger[] cipherBlocks = new BigInteger[message.length / blockSize + 1];
+            LimbAccumulator accumulator = newAccumulator();
+            for(int block=0; block<cipherBlocks.length; block++)
+                cipherBlocks[block] = encryptBlock(message, block, blockSize, accumulator);
+            KnapsackMetrics.record(KnapsackMetrics.Operation.ENCRYPT, start, message.length);
+            return Arrays.asList(cipherBlocks);
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.ENCRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Method used to encrypt binary data of any length in block mode,
+     * spreading the blocks across the threads of pool
+     * @return
+     *  a list of BigIntegers identical to the one returned by encrypt(message)
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being the parallelism of pool]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public List<BigInteger> encrypt(byte[] message, ForkJoinPool pool){
+        long start = KnapsackMetrics.start();
+        try{
+            int blockSize = getBlockSize();
+            BigInteger[] cipherBlocks = new BigInteger[message.length / blockSize + 1];
+            pool.invoke(new EncryptBlocksTask(message, blockSize, cipherBlocks, 0, cipherBlocks.length));
+            KnapsackMetrics.record(KnapsackMetrics.Operation.ENCRYPT, start, message.length);
+            return Arrays.asList(cipherBlocks);
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.ENCRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Method used to encrypt a batch of short records, each record into a single padded block.
+     * The key is looked up once for the batch, a single accumulator is reused across the
+     * records and no list is created per record
+     * @precondition
+     *   every record is shorter than getBlockSize() bytes
+     * @postcondition
+     *   object remains as is; the cipher values are returned in the order of records
+     * @return
+     *  an array holding the cipher value of every record
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)   [m being the number of records]
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    public BigInteger[] encryptAll(byte[][] records){
+        long start = KnapsackMetrics.start();
+        try{
+            BigInteger[] cipherValues = new BigInteger[records.length];
+            LimbAccumulator accumulator = newAccumulator();
+            long bytes = 0;
+            for(int i=0; i<records.length; i++){
+                cipherValues[i] = encryptRecord(records[i], records[i].length, accumulator);
+                bytes += records[i].length;
+            }
+            KnapsackMetrics.record(KnapsackMetrics.Operation.ENCRYPT, start, bytes);
+            return cipherValues;
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.ENCRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Method used to encrypt the first length bytes of record into a single padded block,
+     * record may be a scratch buffer reused across calls. Part of a batch or stream, so the
+     * caller records the metrics
+     * @param accumulator
+     *   scratch accumulator from newAccumulator(), reused across the records of the batch
+     * @precondition
+     *   length is less than getBlockSize()
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    BigInteger encryptRecord(byte[] record, int length, LimbAccumulator accumulator){
+        if(length >= getBlockSize())
+            throw new IllegalArgumentException("Record of " + length + " bytes does not fit in a knapsack of "
+                    + (getBlockSize() - 1) + " bytes");
+        return encryptRange(record, 0, length, getBlockSize(), accumulator);
+    }
+
+    /**
+     * Method used to encrypt the first length bytes of buffer as a single block, padded when
+     * length is less than getBlockSize(), i.e. when it is the last block of a message.
+     * Part of a stream, so KnapsackOutputStream records the metrics
+     * @param accumulator
+     *   scratch accumulator from newAccumulator(), reused across the blocks of the stream
+     * @precondition
+     *   length is at most getBlockSize()
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    BigInteger encryptBuffer(byte[] buffer, int length, LimbAccumulator accumulator){
+        return encryptRange(buffer, 0, length, getBlockSize(), accumulator);
+    }
+
+    /**
+     * Fork/join task encrypting the blocks [from, to) of a message into cipherBlocks,
+     * halving the range until it holds at most BLOCKS_PER_TASK blocks
+     **/
+    private class EncryptBlocksTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] message;
+        private final int blockSize;
+        private final BigInteger[] cipherBlocks;
+        private final int from;
+        private final int to;
+
+        EncryptBlocksTask(byte[] message, int blockSize, BigInteger[] cipherBlocks, int from, int to){
+            this.message = message;
+            this.blockSize = blockSize;
+            this.cipherBlocks = cipherBlocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from <= BLOCKS_PER_TASK){
+                LimbAccumulator accumulator = newAccumulator();
+                for(int block=from; block<to; block++)
+                    cipherBlocks[block] = encryptBlock(message, block, blockSize, accumulator);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EncryptBlocksTask(message, blockSize, cipherBlocks, from, middle),
+                    new EncryptBlocksTask(message, blockSize, cipherBlocks, middle, to));
+        }
+    }
+
+    /**
+     * Helper function to encrypt the block-th block of message,
+     * adding the 0x80 padding marker when it is the last block of the message
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [n being the block size]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private BigInteger encryptBlock(byte[] message, int block, int blockSize, LimbAccumulator accumulator){
+        int from = block * blockSize;
+        return encryptRange(message, from, Math.min(from + blockSize, message.length), blockSize, accumulator);
+    }
+
+    /**
+     * Helper function to encrypt the bytes [from, to) of message as a single block,
+     * adding the 0x80 padding marker when they are fewer than blockSize.
+     * Bit j (counted from the most significant bit) of byte k selects b[8 * (k - from) + j],
+     * when the encryption table is built each byte selects its precomputed sum instead
+     * @param accumulator
+     *   scratch accumulator from newAccumulator(), zeroed again on return
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)   [n being the block size, m the limbs per element]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n * m)
+     */
+    private BigInteger encryptRange(byte[] message, int from, int to, int blockSize, LimbAccumulator accumulator){
+        if(longB != null)
+            return LongKnapsackEngine.encryptBlock(longB, message, from, to, blockSize);
+        if(encryptionTable != null){
+            //a single precomputed sum per byte
+            BigInteger cipherVal = BigInteger.ZERO;
+            for(int k=from; k<to; k++){
+                int value = message[k] & 0xFF;
+                if(value != 0)
+                    cipherVal = cipherVal.add(encryptionTable[k - from][value]);
+            }
+            //the padding marker is a single 1 bit, the 0x00 bytes after it add nothing to the sum
+            if(to - from < blockSize)
+                cipherVal = cipherVal.add(b.get((to - from) * 8));
+            return cipherVal;
+        }
+        //Select each bi for which the message bit is nonzero and add its limbs to the accumulator,
+        //a single BigInteger holding the cipher value is created at the end
+        int index = 0;
+        for(int k=from; k<to; k++){
+            int value = message[k];
+            for(int mask=0x80; mask!=0; mask>>>=1, index++){
+                if((value & mask) != 0)
+                    b.addTo(index, accumulator);
+            }
+        }
+        if(to - from < blockSize)
+            b.addTo((to - from) * 8, accumulator);
+        return accumulator.toBigIntegerAndReset();
+    }
+
+    /**
+     * Method used to create the scratch accumulator encryptRecord and encryptBuffer need,
+     * null when this key encrypts with longs or through the table. A batch or stream creates
+     * one and reuses it for all of its blocks, as encryption zeroes it after every block
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    LimbAccumulator newAccumulator(){
+        if(longB != null || encryptionTable != null)
+            return null;
+        return new LimbAccumulator(limbsPerElement);
+    }
+
+    /**
+     * Helper function holding b on the heap, as BigIntegers when LongKnapsackEngine takes the
+     * elements as longs and as a single array of limbs otherwise
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n * m)
+     */
+    private static KnapsackSequence heapSequence(BigInteger[] b){
+        KnapsackSequence elements = new ArrayKnapsackSequence(b.clone());
+        if(b.length < 8 || LongKnapsackEngine.toLongs(elements) != null)
+            return elements;
+        return new LimbKnapsackSequence(elements);
+    }
+
+    /**
+     * Helper function estimating the heap memory of a BigInteger of the given bit length
+     * (object header and fields plus its int[] magnitude)
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static long estimateBytes(int bitLength){
+        return BIG_INTEGER_BYTES + ARRAY_HEADER_BYTES + 4L * ((bitLength + 31) / 32);
+    }
+}
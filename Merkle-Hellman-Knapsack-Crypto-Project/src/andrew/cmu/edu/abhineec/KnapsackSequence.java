@@ -0,0 +1,52 @@
+package andrew.cmu.edu.abhineec;
+
+import java.math.BigInteger;
+
+/******************************************************************************
+ * KnapsackSequence gives random access to the elements of a knapsack (w or b),
+ * so that the keys can hold them in a plain array, as limbs on or off the heap or
+ * read them lazily from a memory mapped key file
+ ******************************************************************************/
+interface KnapsackSequence {
+
+    /**
+     * Returns the number of elements in the sequence
+     **/
+    int size();
+
+    /**
+     * Returns the element at position index
+     * @precondition
+     * index should be between 0 and size()
+     **/
+    BigInteger get(int index);
+
+    /**
+     * Returns the number of 32 bit limbs that hold the largest element
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [O(1) for sequences that store limbs]
+            Big-Omega: Ω(1)
+     */
+    default int limbsPerElement(){
+        return LimbAccumulator.limbsPerElement(this);
+    }
+
+    /**
+     * Method used to add the element at index to accumulator; sequences that store their
+     * elements as bytes or limbs add them without creating a BigInteger
+     * @precondition
+     *   accumulator holds at least limbsPerElement() limbs per element
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the limbs per element]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    default void addTo(int index, LimbAccumulator accumulator){
+        int[] limbs = LimbAccumulator.toLimbs(get(index), accumulator.limbsPerElement());
+        accumulator.add(limbs, 0, limbs.length);
+    }
+}
@@ -0,0 +1,324 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/******************************************************************************
+ * KnapsackServer lets local processes share one loaded MerkleHellmanKnapsackCryptosystem
+ * over a loopback TCP port or a Unix domain socket. Every connection is served on its own
+ * thread, a virtual thread when the JVM has them (Java 21 and later) and a pooled platform
+ * thread otherwise, and carries any number of requests one after another:
+ *
+ *   request:  byte op (ENCRYPT or DECRYPT), int length, length bytes of payload
+ *   response: byte status (OK or ERROR), int length, length bytes of payload
+ *
+ * ENCRYPT takes binary data and answers its cipher text in the wire format of KnapsackCipherText,
+ * DECRYPT takes such a cipher text and answers the data. An ERROR carries its message in UTF-8.
+ * Payloads in either direction are limited to MAX_PAYLOAD_BYTES. A cipher text is larger than its
+ * data, so ENCRYPT takes at most getMaxEncryptBytes() bytes, the most whose cipher text still fits.
+ * All ints are big-endian. Usage: java andrew.cmu.edu.abhineec.KnapsackServer keyFile [port | socketPath]
+ ******************************************************************************/
+public class KnapsackServer implements AutoCloseable {
+    static final byte ENCRYPT = 1;
+    static final byte DECRYPT = 2;
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+    //largest payload accepted in either direction, so that a corrupt length cannot exhaust the heap
+    static final int MAX_PAYLOAD_BYTES = 64 * 1024 * 1024;
+    private static final int DEFAULT_PORT = 7771;
+
+    private final MerkleHellmanKnapsackCryptosystem cryptosystem;
+    private final int maxEncryptBytes;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService connections;
+    private final Thread acceptor;
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Initialize a KnapsackServer listening on address, an InetSocketAddress or a UnixDomainSocketAddress
+     * @precondition
+     *   the keys of cryptosystem are generated
+     * @postcondition
+     *   the server is bound to address and accepts connections
+     **/
+    public KnapsackServer(MerkleHellmanKnapsackCryptosystem cryptosystem, SocketAddress address) throws IOException {
+        this.cryptosystem = cryptosystem;
+        //fail early rather than on the first request
+        cryptosystem.getPrivateKey();
+        this.maxEncryptBytes = maxEncryptBytes(cryptosystem.getPublicKey());
+        this.serverChannel = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.connections = newConnectionExecutor();
+        this.acceptor = new Thread(this::acceptConnections, "knapsack-server-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Returns the address the server listens on, e.g. to find the port when bound to port 0
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public SocketAddress getAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+
+    /**
+     * Returns the largest ENCRYPT payload (in bytes) the server accepts, the most data whose
+     * cipher text is certain to fit in a response of MAX_PAYLOAD_BYTES
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getMaxEncryptBytes(){
+        return maxEncryptBytes;
+    }
+
+    /**
+     * Returns the number of requests served so far
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getRequestCount(){
+        return requests.get();
+    }
+
+    /**
+     * Method used to stop accepting connections and to close the ones being served
+     * @postcondition
+     *   the address is released, a Unix domain socket file is deleted
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        SocketAddress address = serverChannel.getLocalAddress();
+        serverChannel.close();
+        connections.shutdownNow();
+        if(address instanceof UnixDomainSocketAddress)
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+    }
+
+    /**
+     * Method used to turn a command line argument into an address: a number is a loopback
+     * TCP port, anything else the path of a Unix domain socket
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    static SocketAddress parseAddress(String argument){
+        if(argument.matches("\\d+"))
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(argument));
+        return UnixDomainSocketAddress.of(argument);
+    }
+
+    /**
+     * Method used to read the type byte, length and payload of a request or response
+     * @return
+     *   the payload, or null when in is at its end before the type byte
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the length of the payload]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(m)
+     */
+    static byte[] readPayload(DataInputStream in, byte[] type) throws IOException {
+        int first = in.read();
+        if(first < 0)
+            return null;
+        type[0] = (byte) first;
+        int length = in.readInt();
+        if(length < 0 || length > MAX_PAYLOAD_BYTES)
+            throw new IOException("Invalid payload length: " + length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    /**
+     * Method used to write the type byte, length and payload of a request or response
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the length of the payload]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    static void writePayload(DataOutputStream out, byte type, byte[] payload) throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Helper function returning the most bytes of data whose cipher text fits in MAX_PAYLOAD_BYTES.
+     * Data of m bytes encrypts to m / blockSize + 1 blocks, each framed as an int length and
+     * at most the bytes of the sum of all elements of b, which bounds every cipher value
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)   [n elements of m limbs]
+            Big-Omega: Ω(n * m)
+            Big-Theta: Θ(n * m)
+     */
+    private static int maxEncryptBytes(KnapsackPublicKey key){
+        BigInteger sum = BigInteger.ZERO;
+        for(int i=0; i<key.getSize(); i++)
+            sum = sum.add(key.getValueAt(i));
+        long maxBlocks = (MAX_PAYLOAD_BYTES - 4) / (4 + sum.toByteArray().length);
+        return (int) Math.min(MAX_PAYLOAD_BYTES, maxBlocks * key.getBlockSize() - 1);
+    }
+
+    /**
+     * Helper function creating an executor with a new virtual thread per connection when the JVM
+     * has virtual threads, or with a cached pool of daemon platform threads otherwise
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static ExecutorService newConnectionExecutor(){
+        try{
+            //looked up reflectively so that the class still compiles and runs before Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException noVirtualThreads){
+            ThreadFactory daemons = task -> {
+                Thread thread = new Thread(task, "knapsack-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newCachedThreadPool(daemons);
+        }
+    }
+
+    /**
+     * Body of the acceptor thread, handing every accepted connection to its own thread
+     **/
+    private void acceptConnections(){
+        while(!closed){
+            try{
+                SocketChannel connection = serverChannel.accept();
+                connections.execute(() -> serve(connection));
+            }
+            catch(ClosedChannelException stopped){
+                return;
+            }
+            catch(IOException | RuntimeException failure){
+                if(!closed)
+                    System.err.println("KnapsackServer failed to accept a connection: " + failure);
+            }
+        }
+    }
+
+    /**
+     * Helper function serving the requests of a connection until the client closes it
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the bytes of every request]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(m)
+     */
+    private void serve(SocketChannel connection){
+        try(SocketChannel channel = connection;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))){
+            byte[] op = new byte[1];
+            byte[] payload;
+            while((payload = readPayload(in, op)) != null){
+                byte[] response;
+                try{
+                    if(op[0] == ENCRYPT){
+                        if(payload.length > maxEncryptBytes)
+                            throw new IllegalArgumentException("Message of " + payload.length
+                                    + " bytes exceeds the " + maxEncryptBytes + " bytes whose cipher text fits in a response");
+                        response = KnapsackCipherText.encode(cryptosystem.encryptBytes(payload));
+                    }
+                    else if(op[0] == DECRYPT)
+                        response = cryptosystem.decryptBytes(KnapsackCipherText.decode(payload));
+                    else
+                        throw new IllegalArgumentException("Unknown operation: " + op[0]);
+                }
+                catch(RuntimeException failure){
+                    writePayload(out, ERROR, String.valueOf(failure.getMessage()).getBytes(StandardCharsets.UTF_8));
+                    continue;
+                }
+                requests.incrementAndGet();
+                writePayload(out, OK, response);
+            }
+        }
+        catch(EOFException | ClosedChannelException disconnected){
+            //the client went away in the middle of a request
+        }
+        catch(IOException failure){
+            if(!closed)
+                System.err.println("KnapsackServer dropped a connection: " + failure);
+        }
+    }
+
+    /**
+     * Main function serving the key pair of a key file written by KnapsackKeyFile until the process is stopped
+     **/
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1){
+            System.err.println("Usage: java andrew.cmu.edu.abhineec.KnapsackServer keyFile [port | socketPath]");
+            System.exit(2);
+        }
+        MerkleHellmanKnapsackCryptosystem cryptosystem = KnapsackKeyFile.load(Paths.get(args[0]));
+        SocketAddress address = parseAddress(args.length > 1 ? args[1] : String.valueOf(DEFAULT_PORT));
+        if(address instanceof UnixDomainSocketAddress)
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        KnapsackServer server = new KnapsackServer(cryptosystem, address);
+        System.out.println("Serving a " + cryptosystem.getKeySize() + " element knapsack on " + server.getAddress());
+        Thread.currentThread().join();
+    }
+}
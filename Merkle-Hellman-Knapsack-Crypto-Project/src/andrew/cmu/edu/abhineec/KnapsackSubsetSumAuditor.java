@@ -0,0 +1,254 @@
+package andrew.cmu.edu.abhineec;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+/******************************************************************************
+ * KnapsackSubsetSumAuditor measures how quickly a cipher value of a knapsack public key can
+ * be broken without the private key, by solving the subset sum problem on b directly with a
+ * meet-in-the-middle search: the subset sums of the left half of b are stored in a sorted table
+ * and every subset sum of the right half looks up the sum it is missing.
+ * Sums are taken modulo 2^64 in longs and a match is confirmed with the exact BigInteger sum,
+ * so a wrapped collision is never reported. Each table entry packs the high bits of its sum with
+ * the subset it stands for into a single long; when the left half has more subsets than the
+ * table may hold it is split into chunks (fixing its highest elements) that are searched one
+ * after another, trading time for memory. Building the tables and scanning the right half are
+ * spread across the threads of a ForkJoinPool.
+ * Usage: java andrew.cmu.edu.abhineec.KnapsackSubsetSumAuditor [maxKeySize] [maxTableEntries]
+ ******************************************************************************/
+public class KnapsackSubsetSumAuditor {
+    //largest number of elements searched, masks of both halves must fit in a long
+    static final int MAX_ELEMENTS = 62;
+    //the table packs the subset into the low bits of its entries, the remaining high bits must tell sums apart
+    private static final int MAX_TABLE_BITS = 30;
+    private static final int DEFAULT_MAX_TABLE_ENTRIES = 1 << 22;
+    private static final int MIN_KEY_SIZE = 16;
+    private static final int KEY_SIZE_STEP = 4;
+    private static final int DEFAULT_MAX_KEY_SIZE = 40;
+    //subsets enumerated by a single task, the highest bits of a half pick the task
+    private static final int BITS_PER_TASK = 12;
+
+    /**
+     * Method used to find a subset of elements summing exactly to target with a meet-in-the-middle search
+     * @param maxTableEntries
+     *   upper bound on the entries (8 bytes each) of the sorted table
+     * @precondition
+     *   elements holds at most MAX_ELEMENTS non negative elements, target is not negative
+     * @return
+     *   the indices of the elements of the subset, or null when no subset sums to target
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(2^(n/2) * (n + c * log t) / p)   [c chunks of t entries, p the parallelism of pool]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(2^(n/2) * (n + c * log t) / p)
+     */
+    public static BitSet solve(BigInteger[] elements, BigInteger target, int maxTableEntries, ForkJoinPool pool){
+        if(elements.length > MAX_ELEMENTS)
+            throw new IllegalArgumentException("Meet-in-the-middle searches at most " + MAX_ELEMENTS + " elements");
+        if(target.signum() < 0 || maxTableEntries < 1)
+            throw new IllegalArgumentException("Target must not be negative and the table must hold an entry");
+        long[] low64 = new long[elements.length];
+        for(int i=0; i<elements.length; i++){
+            if(elements[i].signum() < 0)
+                throw new IllegalArgumentException("Knapsack elements must not be negative");
+            low64[i] = elements[i].longValue();
+        }
+        int leftSize = (elements.length + 1) / 2;
+        int tableBits = tableBits(leftSize, maxTableEntries);
+        long[] table = new long[1 << tableBits];
+        long[] solution = null;
+        for(long chunk=0; chunk < 1L << (leftSize - tableBits) && solution == null; chunk++)
+            solution = searchChunk(elements, low64, target, leftSize, tableBits, chunk, table, pool);
+        if(solution == null)
+            return null;
+        BitSet subset = BitSet.valueOf(new long[]{solution[0]});
+        for(int j=0; j<elements.length - leftSize; j++){
+            if((solution[1] >>> j & 1) != 0)
+                subset.set(leftSize + j);
+        }
+        return subset;
+    }
+
+    /**
+     * Method used to recover the message of a cipher value produced by key.encryptRecord,
+     * i.e. of a block shorter than key.getBlockSize(), by solving subset sum on the elements
+     * of b a block can select
+     * @return
+     *   the message, or null when no subset of b sums to cipherValue
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(2^(n/2) * (n + c * log t) / p)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(2^(n/2) * (n + c * log t) / p)
+     */
+    public static byte[] recoverMessage(KnapsackPublicKey key, BigInteger cipherValue, int maxTableEntries, ForkJoinPool pool){
+        BigInteger[] elements = new BigInteger[key.getBlockSize() * 8];
+        for(int i=0; i<elements.length; i++)
+            elements[i] = key.getValueAt(i);
+        BitSet subset = solve(elements, cipherValue, maxTableEntries, pool);
+        if(subset == null)
+            return null;
+        byte[] block = new byte[key.getBlockSize()];
+        for(int i=subset.nextSetBit(0); i>=0; i=subset.nextSetBit(i + 1))
+            block[i >>> 3] |= (byte) (0x80 >>> (i & 7));
+        try{
+            return Arrays.copyOf(block, KnapsackPrivateKey.paddingStart(block));
+        }
+        catch(IllegalArgumentException notARecord){
+            //a subset of b summing to cipherValue that is not a padded block
+            return null;
+        }
+    }
+
+    /**
+     * Helper function searching the left subsets whose elements [tableBits, leftSize) are given by chunk:
+     * fills table with the sums of the subsets of the left elements [0, tableBits), sorts it and
+     * looks up the missing sum of every subset of the right half
+     * @return
+     *   the left and right mask of a subset summing to target, or null when this chunk holds none
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O((2^t + 2^r * log 2^t) / p)   [t being tableBits, r the size of the right half]
+            Big-Omega: Ω(2^t / p)
+            Big-Theta: Θ((2^t + 2^r * t) / p)
+     */
+    private static long[] searchChunk(BigInteger[] elements, long[] low64, BigInteger target, int leftSize,
+                                      int tableBits, long chunk, long[] table, ForkJoinPool pool){
+        long chunkSum = 0;
+        for(int i=tableBits; i<leftSize; i++){
+            if((chunk >>> (i - tableBits) & 1) != 0)
+                chunkSum += low64[i];
+        }
+        long chunkMask = chunk << tableBits;
+        long subsetMask = (1L << tableBits) - 1;
+        int taskBits = Math.min(tableBits, BITS_PER_TASK);
+        long base = chunkSum;
+        pool.invoke(new RangeTask(0, 1 << (tableBits - taskBits), task -> {
+            int from = task << taskBits;
+            table[from] = base + sumOf(low64, 0, from);
+            for(int x=1; x < 1 << taskBits; x++)
+                table[from + x] = table[from + (x & (x - 1))] + low64[Integer.numberOfTrailingZeros(x)];
+            //keep the high bits of every sum and put the subset in the low bits
+            for(int x=0; x < 1 << taskBits; x++)
+                table[from + x] = (table[from + x] & ~subsetMask) | (from + x);
+        }));
+        //sorts in parallel on the common pool
+        Arrays.parallelSort(table);
+
+        int rightSize = elements.length - leftSize;
+        int rightTaskBits = Math.min(rightSize, BITS_PER_TASK);
+        long target64 = target.longValue();
+        AtomicReference<long[]> solution = new AtomicReference<long[]>();
+        pool.invoke(new RangeTask(0, 1 << (rightSize - rightTaskBits), task -> {
+            if(solution.get() != null)
+                return;
+            long prefix = (long) task << rightTaskBits;
+            long rightSum = sumOf(low64, leftSize, prefix);
+            long gray = 0;
+            for(long x=0; x < 1L << rightTaskBits; x++){
+                if(x > 0){
+                    //gray code order changes a single element per step
+                    int changed = Long.numberOfTrailingZeros(x);
+                    gray ^= 1L << changed;
+                    rightSum += (gray >>> changed & 1) != 0 ? low64[leftSize + changed] : -low64[leftSize + changed];
+                }
+                long missing = target64 - rightSum;
+                long lowest = missing & ~subsetMask;
+                int at = Arrays.binarySearch(table, lowest);
+                for(int i = at < 0 ? -at - 1 : at; i<table.length && (table[i] & ~subsetMask) == lowest; i++){
+                    long leftMask = chunkMask | (table[i] & subsetMask);
+                    long rightMask = prefix | gray;
+                    if(sumOf(low64, 0, leftMask) == missing && exactSum(elements, leftSize, leftMask, rightMask).equals(target)){
+                        solution.compareAndSet(null, new long[]{leftMask, rightMask});
+                        return;
+                    }
+                }
+            }
+        }));
+        return solution.get();
+    }
+
+    /**
+     * Helper function returning the number of left elements whose subsets fill the table,
+     * the largest power of two entries not above maxTableEntries
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static int tableBits(int leftSize, int maxTableEntries){
+        return Math.min(leftSize, Math.min(MAX_TABLE_BITS, 31 - Integer.numberOfLeadingZeros(maxTableEntries)));
+    }
+
+    /**
+     * Helper function returning the sum modulo 2^64 of the elements offset + j for every bit j set in mask
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(n)
+     */
+    private static long sumOf(long[] low64, int offset, long mask){
+        long sum = 0;
+        for(; mask != 0; mask &= mask - 1)
+            sum += low64[offset + Long.numberOfTrailingZeros(mask)];
+        return sum;
+    }
+
+    /**
+     * Helper function returning the exact sum of the elements selected by leftMask and rightMask
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(n)
+     */
+    private static BigInteger exactSum(BigInteger[] elements, int leftSize, long leftMask, long rightMask){
+        BigInteger sum = BigInteger.ZERO;
+        for(; leftMask != 0; leftMask &= leftMask - 1)
+            sum = sum.add(elements[Long.numberOfTrailingZeros(leftMask)]);
+        for(; rightMask != 0; rightMask &= rightMask - 1)
+            sum = sum.add(elements[leftSize + Long.numberOfTrailingZeros(rightMask)]);
+        return sum;
+    }
+
+    /**
+     * Main function generating keys of MIN_KEY_SIZE upto maxKeySize elements the way
+     * generatePublicKeys does, encrypting a random record with each and timing its recovery
+     * from the public key alone
+     **/
+    public static void main(String[] args) throws Exception {
+        int maxKeySize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MAX_KEY_SIZE;
+        int maxTableEntries = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_TABLE_ENTRIES;
+        Random random = new Random(2020);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        System.out.println("keySize, searchedElements, tableEntries, chunks, recoverMs, recovered");
+        for(int keySize=MIN_KEY_SIZE; keySize<=maxKeySize; keySize+=KEY_SIZE_STEP){
+            KnapsackPublicKey key = MerkleHellmanKnapsackCryptosystem.generateKeys(keySize, random).getPublicKey();
+            int searched = key.getBlockSize() * 8;
+            if(searched > MAX_ELEMENTS)
+                break;
+            byte[] message = new byte[key.getBlockSize() - 1];
+            random.nextBytes(message);
+            BigInteger cipherValue = key.encryptAll(new byte[][]{message})[0];
+            long start = System.nanoTime();
+            byte[] recovered = recoverMessage(key, cipherValue, maxTableEntries, pool);
+            long elapsed = System.nanoTime() - start;
+            int leftSize = (searched + 1) / 2;
+            int tableBits = tableBits(leftSize, maxTableEntries);
+            System.out.printf("%d, %d, %d, %d, %.1f, %b%n", keySize, searched, 1L << tableBits,
+                    1L << (leftSize - tableBits), elapsed / 1e6, Arrays.equals(recovered, message));
+        }
+    }
+}
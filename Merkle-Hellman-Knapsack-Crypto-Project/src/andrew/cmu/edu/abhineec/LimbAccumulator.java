@@ -0,0 +1,227 @@
+package andrew.cmu.edu.abhineec;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/******************************************************************************
+ * LimbAccumulator sums knapsack elements given as 32 bit limbs, least significant limb first.
+ * Every limb is added into its own long without carrying, so an addition costs one long
+ * addition per limb and allocates nothing; carries are propagated when the sum is turned
+ * into a BigInteger, and after every MAX_PENDING_ADDITIONS additions before a limb could
+ * exceed 64 bits. Hence encrypting a block allocates the accumulator (reused
+ * across blocks) and the resulting BigInteger only, instead of a BigInteger per selected element.
+ * Objects of this class are not safe for use by several threads at once
+ ******************************************************************************/
+final class LimbAccumulator {
+    //terms a limb may hold before its carry, 2^32 terms below 2^32 each plus a carry below 2^32
+    //stay below 2^64, limbs being read as unsigned longs
+    private static final long MAX_PENDING_ADDITIONS = 1L << 32;
+
+    private final long[] limbs;
+    //terms in every limb since the last carry, counting the limb left by the carry as one
+    private long pendingAdditions;
+
+    /**
+     * Initialize a zeroed LimbAccumulator for elements of limbsPerElement limbs
+     * @postcondition
+     *   the accumulator holds two limbs more than an element, room for sums of upto 2^64
+     *   elements, carries being propagated every MAX_PENDING_ADDITIONS additions
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the limbs per element]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    LimbAccumulator(int limbsPerElement){
+        this.limbs = new long[limbsPerElement + 2];
+    }
+
+    /**
+     * Returns the number of limbs of the elements this accumulator adds
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    int limbsPerElement(){
+        return limbs.length - 2;
+    }
+
+    /**
+     * Method used to add the element held by source[offset, offset + length)
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    void add(int[] source, int offset, int length){
+        countAddition();
+        for(int j=0; j<length; j++)
+            limbs[j] += source[offset + j] & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Method used to add the element of length limbs starting at byte byteOffset of source,
+     * read with absolute gets in the byte order of source
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    void add(ByteBuffer source, int byteOffset, int length){
+        countAddition();
+        for(int j=0; j<length; j++, byteOffset+=4)
+            limbs[j] += source.getInt(byteOffset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Method used to add the element held as length bytes of unsigned big-endian magnitude
+     * starting at byte byteOffset of source, e.g. an element of a key file, read with absolute gets
+     * @precondition
+     *   the element takes at most limbsPerElement() limbs
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    void addMagnitude(ByteBuffer source, int byteOffset, int length){
+        countAddition();
+        //whole limbs from the least significant end, then the remaining most significant bytes
+        boolean bigEndian = source.order() == ByteOrder.BIG_ENDIAN;
+        int end = byteOffset + length;
+        int j = 0;
+        for(; end - byteOffset >= 4; end-=4, j++){
+            int limb = source.getInt(end - 4);
+            limbs[j] += (bigEndian ? limb : Integer.reverseBytes(limb)) & 0xFFFFFFFFL;
+        }
+        long limb = 0;
+        for(int k=byteOffset; k<end; k++)
+            limb = limb << 8 | (source.get(k) & 0xFF);
+        limbs[j] += limb;
+    }
+
+    /**
+     * Method used to turn the sum into a BigInteger
+     * @postcondition
+     *   the accumulator is zeroed, ready for the next block
+     * @return
+     *   the sum of the elements added since the accumulator was last zeroed
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    BigInteger toBigIntegerAndReset(){
+        carry();
+        byte[] magnitude = new byte[limbs.length * 4];
+        for(int j=0; j<limbs.length; j++){
+            long limb = limbs[j];
+            int at = magnitude.length - 4 * (j + 1);
+            magnitude[at] = (byte) (limb >>> 24);
+            magnitude[at + 1] = (byte) (limb >>> 16);
+            magnitude[at + 2] = (byte) (limb >>> 8);
+            magnitude[at + 3] = (byte) limb;
+            limbs[j] = 0;
+        }
+        pendingAdditions = 0;
+        return new BigInteger(1, magnitude);
+    }
+
+    /**
+     * Helper function converting a non negative value to length limbs, least significant limb first
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    static int[] toLimbs(BigInteger value, int length){
+        byte[] bytes = value.toByteArray();
+        int[] limbs = new int[length];
+        for(int i=0; i<bytes.length && i/4<length; i++)
+            limbs[i / 4] |= (bytes[bytes.length - 1 - i] & 0xFF) << (8 * (i % 4));
+        return limbs;
+    }
+
+    /**
+     * Helper function returning the limbs every element of sequence needs
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    static int limbsPerElement(KnapsackSequence sequence){
+        int maxBitLength = 1;
+        for(int i=0; i<sequence.size(); i++){
+            BigInteger element = sequence.get(i);
+            if(element.signum() < 0)
+                throw new IllegalArgumentException("Knapsack elements must not be negative");
+            maxBitLength = Math.max(maxBitLength, element.bitLength());
+        }
+        return (maxBitLength + 31) / 32;
+    }
+
+    /**
+     * Helper function copying the elements of sequence into a single array of
+     * limbsPerElement limbs per element, element i starting at i * limbsPerElement
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)
+            Big-Omega: Ω(n * m)
+            Big-Theta: Θ(n * m)
+     */
+    static int[] toLimbs(KnapsackSequence sequence, int limbsPerElement){
+        int[] limbs = new int[Math.multiplyExact(sequence.size(), limbsPerElement)];
+        for(int i=0; i<sequence.size(); i++){
+            int[] element = toLimbs(sequence.get(i), limbsPerElement);
+            System.arraycopy(element, 0, limbs, i * limbsPerElement, limbsPerElement);
+        }
+        return limbs;
+    }
+
+    /**
+     * Helper function counting an addition and propagating the carries before a limb could overflow
+     **/
+    private void countAddition(){
+        if(pendingAdditions == MAX_PENDING_ADDITIONS)
+            carry();
+        pendingAdditions++;
+    }
+
+    /**
+     * Helper function propagating the carries, leaving every limb below 2^32
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    private void carry(){
+        long carry = 0;
+        for(int j=0; j<limbs.length; j++){
+            long limb = limbs[j] + carry;
+            carry = limb >>> 32;
+            limbs[j] = limb & 0xFFFFFFFFL;
+        }
+        if(carry != 0)
+            throw new ArithmeticException("Sum exceeds the limbs of the accumulator");
+        pendingAdditions = 1;
+    }
+}
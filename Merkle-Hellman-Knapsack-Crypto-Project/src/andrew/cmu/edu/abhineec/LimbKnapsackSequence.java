@@ -0,0 +1,87 @@
+package andrew.cmu.edu.abhineec;
+
+import java.math.BigInteger;
+
+/******************************************************************************
+ * LimbKnapsackSequence is a KnapsackSequence held on the heap as a single int array of
+ * 32 bit limbs, least significant limb first. Every element takes the same number of limbs,
+ * enough for the largest element, so element i starts at i * limbsPerElement. Encryption adds
+ * the limbs of the selected elements straight from the array into a LimbAccumulator, and
+ * get(index) returns the element as a (new) BigInteger, so the elements are held only once
+ ******************************************************************************/
+final class LimbKnapsackSequence implements KnapsackSequence {
+    private final int[] limbs;
+    private final int size;
+    private final int limbsPerElement;
+
+    /**
+     * Initialize a LimbKnapsackSequence holding the elements of sequence
+     * @precondition
+     *   the elements of sequence are not negative
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)   [m being the limbs per element]
+            Big-Omega: Ω(n * m)
+            Big-Theta: Θ(n * m)
+     */
+    LimbKnapsackSequence(KnapsackSequence sequence){
+        this.size = sequence.size();
+        this.limbsPerElement = LimbAccumulator.limbsPerElement(sequence);
+        this.limbs = LimbAccumulator.toLimbs(sequence, limbsPerElement);
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public int size(){
+        return size;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the limbs per element]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    @Override
+    public BigInteger get(int index){
+        byte[] magnitude = new byte[limbsPerElement * 4];
+        int base = index * limbsPerElement;
+        for(int j=0; j<limbsPerElement; j++){
+            int limb = limbs[base + j];
+            int at = magnitude.length - 4 * (j + 1);
+            magnitude[at] = (byte) (limb >>> 24);
+            magnitude[at + 1] = (byte) (limb >>> 16);
+            magnitude[at + 2] = (byte) (limb >>> 8);
+            magnitude[at + 3] = (byte) limb;
+        }
+        return new BigInteger(1, magnitude);
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public int limbsPerElement(){
+        return limbsPerElement;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    @Override
+    public void addTo(int index, LimbAccumulator accumulator){
+        accumulator.add(limbs, index * limbsPerElement, limbsPerElement);
+    }
+}
@@ -0,0 +1,157 @@
+package andrew.cmu.edu.abhineec;
+
+import java.math.BigInteger;
+
+/******************************************************************************
+ * LongKnapsackEngine encrypts and decrypts single blocks of a small knapsack, whose
+ * elements (and q) fit in 63 bits, with primitive long arithmetic instead of BigIntegers.
+ * Knapsack sums of upto 63 such elements take at most 69 bits and are accumulated as an
+ * unsigned 128 bit value in two longs, r⁻¹ mod q is applied with Math.multiplyHigh and a
+ * shift-subtract reduction, so apart from the cipher value handed in or out no objects
+ * are created. The results are identical to those of the BigInteger arithmetic
+ ******************************************************************************/
+final class LongKnapsackEngine {
+    //largest knapsack of a super increasing sequence of positive elements below 2^63
+    static final int MAX_SIZE = 63;
+
+    private LongKnapsackEngine(){
+    }
+
+    /**
+     * Method used to copy the elements of a small knapsack into a long array
+     * @return
+     *   the elements as longs, or null when the knapsack is larger than MAX_SIZE elements
+     *   or one of its elements does not fit in 63 bits
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(n)
+     */
+    static long[] toLongs(KnapsackSequence sequence){
+        if(sequence.size() > MAX_SIZE)
+            return null;
+        long[] elements = new long[sequence.size()];
+        for(int i=0; i<elements.length; i++){
+            BigInteger element = sequence.get(i);
+            if(element.signum() < 0 || element.bitLength() > 63)
+                return null;
+            elements[i] = element.longValue();
+        }
+        return elements;
+    }
+
+    /**
+     * Method used to compute the knapsack sum of the bytes [from, to) of message,
+     * plus the element of the 0x80 padding marker when the block is shorter than blockSize
+     * @precondition
+     *   b holds blockSize * 8 or more elements, each below 2^63
+     * @return
+     *   the cipher value of the block
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    static BigInteger encryptBlock(long[] b, byte[] message, int from, int to, int blockSize){
+        long high = 0, low = 0;
+        int index = 0;
+        for(int k=from; k<to; k++){
+            int value = message[k];
+            for(int mask=0x80; mask!=0; mask>>>=1, index++){
+                if((value & mask) != 0){
+                    low += b[index];
+                    //unsigned overflow of the low word carries into the high word
+                    if(Long.compareUnsigned(low, b[index]) < 0)
+                        high++;
+                }
+            }
+        }
+        if(to - from < blockSize){
+            long marker = b[(to - from) * 8];
+            low += marker;
+            if(Long.compareUnsigned(low, marker) < 0)
+                high++;
+        }
+        return toBigInteger(high, low);
+    }
+
+    /**
+     * Method used to recover lengthInBytes bytes of a message from its cipher value,
+     * setting the recovered bits directly in message starting at offset
+     * @precondition
+     *   message[offset, offset + lengthInBytes) is zeroed, w is increasing, q < 2^63 and
+     *   rModInvq is r⁻¹ mod q
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    static void decryptBlock(long[] w, long q, long rModInvq, BigInteger cipherValue,
+                             byte[] message, int offset, int lengthInBytes){
+        long cipherMod;
+        if(cipherValue.signum() >= 0 && cipherValue.bitLength() <= 63)
+            cipherMod = cipherValue.longValue() % q;
+        else if(cipherValue.signum() >= 0 && cipherValue.bitLength() <= 127)
+            cipherMod = reduce(cipherValue.shiftRight(64).longValue(), cipherValue.longValue(), q);
+        else
+            cipherMod = cipherValue.mod(BigInteger.valueOf(q)).longValue();
+        //calculate c_dash as c * rModInvq mod q
+        long c_dash = reduce(Math.multiplyHigh(cipherMod, rModInvq), cipherMod * rModInvq, q);
+        //Find the elements of W which sum to c_dash and set their bits in message
+        for(int tailIndex=lengthInBytes*8-1; tailIndex>=0 && c_dash!=0; tailIndex--){
+            if(c_dash >= w[tailIndex]){
+                message[offset + (tailIndex >>> 3)] |= (byte) (0x80 >>> (tailIndex & 7));
+                c_dash -= w[tailIndex];
+            }
+        }
+    }
+
+    /**
+     * Helper function computing (high * 2^64 + low) mod q for the unsigned 128 bit
+     * value high:low by shifting the bits of low one by one into the remainder
+     * @precondition
+     *   0 < q < 2^63
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)   [64 shift-subtract steps]
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    static long reduce(long high, long low, long q){
+        long remainder = Long.remainderUnsigned(high, q);
+        for(int bit=63; bit>=0; bit--){
+            //remainder < q < 2^63, so doubling it cannot overflow an unsigned long
+            remainder = (remainder << 1) | ((low >>> bit) & 1);
+            if(Long.compareUnsigned(remainder, q) >= 0)
+                remainder -= q;
+        }
+        return remainder;
+    }
+
+    /**
+     * Helper function converting the unsigned 128 bit value high:low to a BigInteger
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static BigInteger toBigInteger(long high, long low){
+        if(high == 0 && low >= 0)
+            return BigInteger.valueOf(low);
+        byte[] magnitude = new byte[16];
+        for(int i=0; i<8; i++){
+            magnitude[7 - i] = (byte) (high >>> (8 * i));
+            magnitude[15 - i] = (byte) (low >>> (8 * i));
+        }
+        return new BigInteger(1, magnitude);
+    }
+}
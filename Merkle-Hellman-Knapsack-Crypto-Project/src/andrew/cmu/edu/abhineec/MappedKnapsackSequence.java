@@ -0,0 +1,101 @@
+package andrew.cmu.edu.abhineec;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/******************************************************************************
+ * MappedKnapsackSequence is a KnapsackSequence read from a (memory mapped) buffer
+ * holding the elements as length-prefixed unsigned magnitudes, see KnapsackKeyFile.
+ * Each element is turned into a BigInteger the first time it is accessed and cached
+ * afterwards. Concurrent first accesses may both materialize the element, which is
+ * harmless since BigInteger is immutable. Encryption adds the selected elements straight
+ * from the buffer into a LimbAccumulator, without materializing them
+ ******************************************************************************/
+final class MappedKnapsackSequence implements KnapsackSequence {
+    private final ByteBuffer buffer;
+    //offset of the length prefix of every element in buffer
+    private final int[] offsets;
+    private final BigInteger[] cache;
+    private final int limbsPerElement;
+
+    /**
+     * Initialize a MappedKnapsackSequence of size elements stored back to back
+     * in buffer starting at its current position
+     * @postcondition
+     *   the position of buffer is moved past the last element
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [reads the length prefixes only]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    MappedKnapsackSequence(ByteBuffer buffer, int size){
+        this.buffer = buffer;
+        this.offsets = new int[size];
+        this.cache = new BigInteger[size];
+        int offset = buffer.position();
+        int maxLength = 1;
+        for(int i=0; i<size; i++){
+            offsets[i] = offset;
+            int length = buffer.getInt(offset);
+            maxLength = Math.max(maxLength, length);
+            offset += 4 + length;
+        }
+        buffer.position(offset);
+        this.limbsPerElement = (maxLength + 3) / 4;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public int size(){
+        return offsets.length;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the length of the element, O(1) once cached]
+            Big-Omega: Ω(1)
+     */
+    @Override
+    public BigInteger get(int index){
+        BigInteger element = cache[index];
+        if(element == null){
+            int offset = offsets[index];
+            byte[] magnitude = new byte[buffer.getInt(offset)];
+            //absolute get, so concurrent readers do not share a position
+            buffer.get(offset + 4, magnitude);
+            element = new BigInteger(1, magnitude);
+            cache[index] = element;
+        }
+        return element;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public int limbsPerElement(){
+        return limbsPerElement;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the length of the element]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    @Override
+    public void addTo(int index, LimbAccumulator accumulator){
+        int offset = offsets[index];
+        accumulator.addMagnitude(buffer, offset + 4, buffer.getInt(offset));
+    }
+}
@@ -1,55 +1,117 @@
 package andrew.cmu.edu.abhineec;
 
-import edu.colorado.nodes.ObjectNode;
-
 import java.io.BufferedReader;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /******************************************************************************
  * MerkleHellmanKnapsackCryptosystem implements the Merkle–Hellman knapsack cryptosystem
  * as defined @ https://en.wikipedia.org/wiki/Merkle%E2%80%93Hellman_knapsack_cryptosystem
- * It can be used to encrypt and decrypt text containing upto 80 characters and
- * is bounded by  the limitations of the algorithm itself
+ * It builds the super increasing sequence w, generates the immutable KnapsackPublicKey and
+ * KnapsackPrivateKey from it and encrypts/decrypts text with them. Encryption and decryption
+ * keep no state between calls, the cipher text carries the length of the message.
+ * Text is encoded as UTF-8, the encoding of the KnapsackBatch command line, and text that
+ * cannot be encoded (an unpaired surrogate) is rejected instead of being altered.
+ * A single call to encrypt handles text of less than getBlockSize() bytes (79 bytes
+ * for the 641 element key of the driver code), longer text is handled by encryptBlocks
+ * which splits it into knapsack sized blocks. Keys of small knapsacks, whose q fits in 63 bits,
+ * encrypt and decrypt with the primitive long arithmetic of LongKnapsackEngine, very large keys
+ * can be moved out of the heap with moveKeysOffHeap
  ******************************************************************************/
 public class MerkleHellmanKnapsackCryptosystem {
-    private SinglyLinkedList w;
+    private static final int INITIAL_CAPACITY_OF_W = 16;
+    //bits of the random increment added to the running sum for every element of a generated w
+    private static final int INCREMENT_BITS = 32;
+    //key generation splits w and b into index ranges of at least this many elements,
+    //and into upto TASKS_PER_THREAD ranges per thread of the pool
+    private static final int MIN_ELEMENTS_PER_TASK = 1024;
+    private static final int TASKS_PER_THREAD = 4;
+
+    //w is held in an array (instead of SinglyLinkedList) until the keys are generated from it
+    private BigInteger[] w;
+    private int sizeOfW;
     private BigInteger sumW;
-    private BigInteger q;
-    private BigInteger r;
-    private SinglyLinkedList b;
-    private int lengthOfBinaryMessage;
+    private volatile KnapsackPublicKey publicKey;
+    private volatile KnapsackPrivateKey privateKey;
 
     /**
      * Initialize an object of the MerkleHellmanKnapsackCryptosystem
      * @postcondition
-     *   An object of MerkleHellmanKnapsackCryptosystem is initialized with w and b
-     *   as empty SinglyLinkedList objects and sumW as 0
+     *   An object of MerkleHellmanKnapsackCryptosystem is initialized with w
+     *   as an empty array, sumW as 0 and no keys
      **/
     public MerkleHellmanKnapsackCryptosystem(){
-        w = new SinglyLinkedList();
-        b = new SinglyLinkedList();
+        w = new BigInteger[INITIAL_CAPACITY_OF_W];
+        sizeOfW = 0;
         sumW  = BigInteger.valueOf(0);
     }
 
     /**
-     * Wrapper method to add a BigInteger object to the w list
+     * Initialize an object of the MerkleHellmanKnapsackCryptosystem around an existing key pair,
+     * e.g. one loaded by KnapsackKeyFile
+     * @precondition
+     *   publicKey and privateKey belong together
      * @postcondition
-     *   a BigInteger object is added to the w list
+     *   An object of MerkleHellmanKnapsackCryptosystem is initialized that encrypts and decrypts
+     *   with the given keys, w is left empty
+     **/
+    public MerkleHellmanKnapsackCryptosystem(KnapsackPublicKey publicKey, KnapsackPrivateKey privateKey){
+        this();
+        if(publicKey.getSize() != privateKey.getSize())
+            throw new IllegalArgumentException("Public key and private key differ in size");
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+    }
+
+    /**
+     * Wrapper method to add a BigInteger object to the w array
+     * @postcondition
+     *   a BigInteger object is added to the end of w, w is doubled in capacity when full
      **/
     /*
-        Asymptotic Notations:
+        Asymptotic Notations (amortized over the doubling of w):
             Big-O : O(1)
             Big-Omega: Ω(1)
             Big-Theta: Θ(1)
      */
     public void addBigIntegerToW(BigInteger x){
-        this.w.addAtEndNode(new ObjectNode(x, null));
+        if(sizeOfW == w.length)
+            w = Arrays.copyOf(w, w.length * 2);
+        w[sizeOfW++] = x;
         sumW = sumW.add(x);
     }
 
+    /**
+     * Returns the number of elements in the knapsack i.e. the size of w,
+     * or the size of the keys when they were not generated from w
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getKeySize(){
+        KnapsackPublicKey key = this.publicKey;
+        return sizeOfW == 0 && key != null ? key.getSize() : sizeOfW;
+    }
+
     /**
      * Wrapper method to get value at a position from b i.e.
      * the list of public keys
@@ -67,16 +129,144 @@ public class MerkleHellmanKnapsackCryptosystem {
             Big-Theta: Θ(1)
      */
     public BigInteger getValueAtFromB(int index){
-        return (BigInteger) b.getObjectAt(index);
+        return getPublicKey().getValueAt(index);
+    }
+
+    /**
+     * Returns the public key generated by generatePublicKeys
+     * @precondition
+     *   generatePublicKeys has been called
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public KnapsackPublicKey getPublicKey(){
+        KnapsackPublicKey key = this.publicKey;
+        if(key == null)
+            throw new IllegalStateException("Keys have not been generated");
+        return key;
+    }
+
+    /**
+     * Returns the private key generated by generatePublicKeys
+     * @precondition
+     *   generatePublicKeys has been called
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public KnapsackPrivateKey getPrivateKey(){
+        KnapsackPrivateKey key = this.privateKey;
+        if(key == null)
+            throw new IllegalStateException("Keys have not been generated");
+        return key;
+    }
+
+    /**
+     * Method used to generate a complete key: a super increasing sequence w of the given size,
+     * q greater than the sum of w, r coprime to q, and the public keys b.
+     * Each element of w is the sum of all elements before it plus 1 plus a random
+     * increment of INCREMENT_BITS bits
+     * @param size
+     *   number of elements in the knapsack
+     * @param random
+     *   source of randomness, a SecureRandom for real keys or a seeded Random for reproducible benchmarks
+     * @precondition
+     *   size is at least 8
+     * @return
+     *   a MerkleHellmanKnapsackCryptosystem holding the new private and public keys
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static MerkleHellmanKnapsackCryptosystem generateKeys(int size, Random random) throws Exception {
+        return generateKeys(size, random, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method used to generate a complete key like generateKeys(size, random), building w and b
+     * on the threads of pool. The random increments are drawn in order on the calling thread,
+     * so a seeded random yields the same keys whatever the parallelism of pool
+     * @precondition
+     *   size is at least 8
+     * @return
+     *   a MerkleHellmanKnapsackCryptosystem holding the new private and public keys
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being the parallelism of pool, n additions of upto n bits]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public static MerkleHellmanKnapsackCryptosystem generateKeys(int size, Random random, ForkJoinPool pool) throws Exception {
+        if(size < 8)
+            throw new IllegalArgumentException("Knapsack size must be at least 8");
+        BigInteger[] increments = new BigInteger[size];
+        for(int i=0; i<size; i++)
+            increments[i] = new BigInteger(INCREMENT_BITS, random).add(BigInteger.ONE);
+        //wi = si + 1 + increment where si is the sum of the elements before it, hence si+1 = 2 * si + 1 + increment
+        //and a range of k elements maps the sum before it s to 2^k * s + (the sum it reaches from 0)
+        int chunks = chunkCount(size, pool);
+        BigInteger[] sumFromZero = new BigInteger[chunks];
+        pool.invoke(new RangeTask(0, chunks, chunk -> {
+            BigInteger sum = BigInteger.ZERO;
+            for(int i=chunkStart(chunk, chunks, size); i<chunkStart(chunk + 1, chunks, size); i++)
+                sum = sum.shiftLeft(1).add(increments[i]);
+            sumFromZero[chunk] = sum;
+        }));
+        BigInteger[] sumBefore = new BigInteger[chunks + 1];
+        sumBefore[0] = BigInteger.ZERO;
+        for(int chunk=0; chunk<chunks; chunk++){
+            int length = chunkStart(chunk + 1, chunks, size) - chunkStart(chunk, chunks, size);
+            sumBefore[chunk + 1] = sumBefore[chunk].shiftLeft(length).add(sumFromZero[chunk]);
+        }
+        BigInteger[] w = new BigInteger[size];
+        pool.invoke(new RangeTask(0, chunks, chunk -> {
+            BigInteger sum = sumBefore[chunk];
+            for(int i=chunkStart(chunk, chunks, size); i<chunkStart(chunk + 1, chunks, size); i++){
+                w[i] = sum.add(increments[i]);
+                sum = sum.add(w[i]);
+            }
+        }));
+        MerkleHellmanKnapsackCryptosystem cryptosystem = new MerkleHellmanKnapsackCryptosystem();
+        cryptosystem.w = w;
+        cryptosystem.sizeOfW = size;
+        cryptosystem.sumW = sumBefore[chunks];
+        cryptosystem.generatePublicKeys(random, pool);
+        return cryptosystem;
+    }
+
+    /**
+     * Method used to generate a complete key of the given size using a SecureRandom
+     * @return
+     *   a MerkleHellmanKnapsackCryptosystem holding the new private and public keys
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static MerkleHellmanKnapsackCryptosystem generateKeys(int size) throws Exception {
+        return generateKeys(size, new SecureRandom());
     }
 
     /**
      * Method used to populate the list b i.e.
-     * the list of public keys
+     * the list of public keys, drawing q and r with a SecureRandom
      * @precondition
-     * w list should contain a super  increasing sequence of BigIntegers
+     * w list should contain a super  increasing sequence of at least 8 BigIntegers
      * @postcondition
-     *   list b is populated
+     *   the public and private keys are generated
      **/
     /*
         Asymptotic Notations:
@@ -85,29 +275,239 @@ public class MerkleHellmanKnapsackCryptosystem {
             Big-Theta: Θ(n)
      */
     public void generatePublicKeys() throws Exception {
-        if(this.w==null)
+        generatePublicKeys(new SecureRandom());
+    }
+
+    /**
+     * Method used to populate the list b i.e.
+     * the list of public keys
+     * @param random
+     *   source of randomness used to draw q and r
+     * @precondition
+     * w list should contain a super  increasing sequence of at least 8 BigIntegers
+     * @postcondition
+     *   the public and private keys are generated
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public void generatePublicKeys(Random random) throws Exception {
+        generatePublicKeys(random, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Method used to populate the list b i.e. the list of public keys, deriving b on the threads of pool:
+     * every index range of w starts from the sum of w before it times r mod q and continues incrementally
+     * @param random
+     *   source of randomness used to draw q and r
+     * @precondition
+     * w list should contain a super  increasing sequence of at least 8 BigIntegers
+     * @postcondition
+     *   the public and private keys are generated, b is the same whatever the parallelism of pool
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being the parallelism of pool]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public void generatePublicKeys(Random random, ForkJoinPool pool) throws Exception {
+        if(this.w==null || this.sizeOfW==0){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.GENERATE_KEYS);
             throw new Exception("W is null");
+        }
+        long start = KnapsackMetrics.start();
 
-        //choose random q > sumW
-        int randomBtw2and9 = (int) (Math.random() * 7) +2;
-        this.q = sumW.multiply(BigInteger.valueOf(randomBtw2and9));
-        //find r as a coprime of q
-        this.r = coprime(q);
-        //Construct public key blocks as r * wi mod q
-        w.reset();
-        while(w.hasNext()){
-            BigInteger wi = (BigInteger) ((ObjectNode)w.next()).getData();
-            BigInteger bi = wi.multiply(r).mod(q);
-            //add public key to end of list b
-            b.addAtEndNode(new ObjectNode(bi, null));
+        //choose random q > sumW, in the range (sumW, sumW + 2^bitLength(sumW)]
+        BigInteger q = sumW.add(BigInteger.ONE).add(new BigInteger(sumW.bitLength(), random));
+        //draw r uniformly in [2, q) until it is coprime to q, a constant number of tries on average
+        BigInteger r;
+        do{
+            r = new BigInteger(q.bitLength(), random);
+        } while(r.compareTo(BigInteger.ONE) <= 0 || r.compareTo(q) >= 0
+                || !r.gcd(q).equals(BigInteger.ONE));
+        //Construct public key blocks as r * wi mod q, one index range of w per task
+        BigInteger[] w = this.w;
+        int size = sizeOfW;
+        BigInteger[] b = new BigInteger[size];
+        int chunks = chunkCount(size, pool);
+        //sum of w before every range: the sums of the ranges in parallel, then a prefix sum over the ranges
+        BigInteger[] sumBefore = new BigInteger[chunks];
+        pool.invoke(new RangeTask(0, chunks, chunk -> {
+            BigInteger sum = BigInteger.ZERO;
+            for(int i=chunkStart(chunk, chunks, size); i<chunkStart(chunk + 1, chunks, size); i++)
+                sum = sum.add(w[i]);
+            sumBefore[chunk] = sum;
+        }));
+        BigInteger sum = BigInteger.ZERO;
+        for(int chunk=0; chunk<chunks; chunk++){
+            BigInteger chunkSum = sumBefore[chunk];
+            sumBefore[chunk] = sum;
+            sum = sum.add(chunkSum);
         }
+        BigInteger modulus = q, multiplier = r;
+        pool.invoke(new RangeTask(0, chunks, chunk -> deriveB(w, b, chunkStart(chunk, chunks, size),
+                chunkStart(chunk + 1, chunks, size), sumBefore[chunk], modulus, multiplier)));
+        this.privateKey = new KnapsackPrivateKey(Arrays.copyOf(w, sizeOfW), q, r);
+        this.publicKey = new KnapsackPublicKey(b);
+        KnapsackMetrics.record(KnapsackMetrics.Operation.GENERATE_KEYS, start, 0);
+    }
+
+    /**
+     * Helper function deriving b[from, to) from w, given the sum of the elements of w before from
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(k)   [k being to - from]
+            Big-Omega: Ω(k)
+            Big-Theta: Θ(k)
+     */
+    private static void deriveB(BigInteger[] w, BigInteger[] b, int from, int to, BigInteger sumBefore,
+                                BigInteger q, BigInteger r){
+        //wi is the sum of the elements before it plus a (small) delta, hence
+        //bi = (b0 + ... + bi-1 + delta * r) mod q and r only gets multiplied by delta
+        BigInteger sumBeforeTimesR = sumBefore.multiply(r).mod(q);
+        for(int i=from; i<to; i++){
+            BigInteger delta = w[i].subtract(sumBefore);
+            b[i] = reduceOnce(sumBeforeTimesR.add(delta.multiply(r).mod(q)), q);
+            sumBefore = sumBefore.add(w[i]);
+            sumBeforeTimesR = reduceOnce(sumBeforeTimesR.add(b[i]), q);
+        }
+    }
+
+    /**
+     * Helper function returning the number of index ranges key generation splits size elements into
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static int chunkCount(int size, ForkJoinPool pool){
+        return Math.max(1, Math.min(size / MIN_ELEMENTS_PER_TASK, pool.getParallelism() * TASKS_PER_THREAD));
+    }
+
+    /**
+     * Helper function returning the first index of a range, ranges differ in size by at most one element
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    private static int chunkStart(int chunk, int chunks, int size){
+        return (int) ((long) chunk * size / chunks);
+    }
+
+    /**
+     * Helper function reducing a value in [0, 2q) modulo q with a single subtraction
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [n being the number of bits of q]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static BigInteger reduceOnce(BigInteger value, BigInteger q){
+        return value.compareTo(q) >= 0 ? value.subtract(q) : value;
+    }
+
+    /**
+     * Returns an estimate of the heap memory (in bytes) the encryption table would take for b
+     * @precondition
+     *   generatePublicKeys has been called
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public long estimateEncryptionTableBytes(){
+        return getPublicKey().estimateEncryptionTableBytes();
+    }
+
+    /**
+     * Method used to switch the public key to table driven encryption,
+     * see KnapsackPublicKey.withEncryptionTable
+     * @param maxBytes
+     *   upper bound on the heap memory the table may take
+     * @precondition
+     *   generatePublicKeys has been called
+     * @return
+     *   true if the table is in use after the call
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)   [256 additions per byte position]
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public boolean buildEncryptionTable(long maxBytes){
+        KnapsackPublicKey key = getPublicKey().withEncryptionTable(maxBytes);
+        this.publicKey = key;
+        return key.hasEncryptionTable();
+    }
+
+    /**
+     * Method used to move b and w out of the heap into direct buffers,
+     * see KnapsackPublicKey.toOffHeap and KnapsackPrivateKey.toOffHeap.
+     * A built encryption table is dropped
+     * @precondition
+     *   generatePublicKeys has been called
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public void moveKeysOffHeap(){
+        KnapsackPublicKey offHeapPublicKey = getPublicKey().toOffHeap();
+        this.privateKey = getPrivateKey().toOffHeap();
+        this.publicKey = offHeapPublicKey;
+    }
+
+    /**
+     * Returns the estimated heap memory (in bytes) held by the encryption table, 0 when it is not built
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public long getEncryptionTableBytes(){
+        return getPublicKey().getEncryptionTableBytes();
+    }
+
+    /**
+     * Returns the number of bytes that fit in a single knapsack block,
+     * i.e. the number of whole bytes covered by the public key b
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public int getBlockSize(){
+        return getPublicKey().getBlockSize();
     }
 
     /**
      * Method used to encrypt a message using
-     * Merkle–Hellman knapsack cryptosystem
+     * Merkle–Hellman knapsack cryptosystem.
+     * The message is encoded as UTF-8 and encrypted as a single padded block,
+     * so the cipher text carries the message length
      * @precondition
-     * list w and b are  populated with appropriate values
+     * the keys are generated
+     * the UTF-8 encoding of message should be shorter than getBlockSize() bytes, use encryptBlocks otherwise
      * @postcondition
      *   object remains as is; cipher text is returned
      * @return
@@ -120,34 +520,14 @@ public class MerkleHellmanKnapsackCryptosystem {
             Big-Theta: Θ(n)
      */
     public String encrypt(String message){
-        StringBuilder encodedString = new StringBuilder();
-        //convert the plain text to its binary value
-        StringBuilder messageInBinary = new StringBuilder();
-        for(int i=0; i<message.length(); i++){
-            int asciiValue = message.charAt(i);
-            //get the  binaryValue of  current char
-            String binaryValue = Integer.toBinaryString(asciiValue);
-            //Add trailing 0s if binary length is less than 8
-            for(int x=binaryValue.length(); x<8; x++)
-                binaryValue = "0" + binaryValue;
-            messageInBinary.append(binaryValue);
-        }
-        //update variable lengthOfBinaryMessage to contain the length of messageInBinary
-        // is used during decryption
-        this.lengthOfBinaryMessage = messageInBinary.length();
-        //Select each bi for which messageInBinary[i] is nonzero, compute (mi*bi) and add them together.
-        //This represents the cipher text
-        int index = 0;
-        BigInteger cipherVal = BigInteger.valueOf(0);
-        for(char binaryVal: messageInBinary.toString().toCharArray()){
-            int tmp = binaryVal=='0'?0:1;
-            BigInteger bi = (BigInteger) ((ObjectNode) b.getObjectAt(index++)).getData();
-            BigInteger ctVal = bi.multiply(BigInteger.valueOf(tmp));
-            cipherVal = cipherVal.add(ctVal);
+        byte[] plainText = encode(message);
+        if(plainText.length >= getBlockSize()){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.ENCRYPT);
+            throw new IllegalArgumentException("Message of " + plainText.length + " bytes does not fit in a knapsack of "
+                    + (getBlockSize() - 1) + " bytes, use encryptBlocks instead");
         }
         //return cipher text as string
-        encodedString.append(cipherVal);
-        return encodedString.toString().trim();
+        return encryptBytes(plainText).get(0).toString();
     }
 
     /**
@@ -167,34 +547,162 @@ public class MerkleHellmanKnapsackCryptosystem {
             Big-Theta: Θ(n)
      */
     public String decrypt(String cipherText){
-        //calculate modular inverse of r modulo q
-        BigInteger rModInvq = r.modInverse(q);
-        BigInteger cipherValue = new BigInteger(cipherText);
-        //calculate c_dash as c * rModInvq mod q
-        BigInteger c_dash = cipherValue.multiply(rModInvq).mod(q);
-        //Find the resulting list of indexes of the elements of W which sum to c_dash
-        List<Integer> wiList = greedyDecompose(c_dash);
-        StringBuilder messageInBinary = new StringBuilder();
-        for(int i=0; i<b.countNodes(); i++){
-            if(wiList.contains(i))
-                messageInBinary.append("1");
-            else
-                messageInBinary.append("0");
+        return decryptBlocks(Collections.singletonList(cipherText));
+    }
+
+    /**
+     * Method used to encrypt a message of any length using
+     * Merkle–Hellman knapsack cryptosystem in block mode.
+     * The UTF-8 encoded message is split into blocks of getBlockSize() bytes and each block
+     * is encrypted into its own cipher text, see KnapsackPublicKey
+     * @precondition
+     * the keys are generated
+     * @postcondition
+     *   object remains as is; the list of cipher texts (one per block) is returned
+     * @return
+     *  a list of strings, each containing the encrypted text of one block
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public List<String> encryptBlocks(String message){
+        return toStrings(encryptBytes(encode(message)));
+    }
+
+    /**
+     * Method used to decrypt a list of cipher texts produced by encryptBlocks
+     * @precondition
+     * cipherBlocks holds, in order, every block returned by encryptBlocks for this key
+     * @postcondition
+     *   object remains as is; plain text with the padding removed is returned
+     * @return
+     *  a string object containing the plain text
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public String decryptBlocks(List<String> cipherBlocks){
+        return new String(decryptBytes(toBigIntegers(cipherBlocks)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method used to encrypt a message of any length in block mode,
+     * spreading the blocks across the threads of pool
+     * @precondition
+     * the keys are generated
+     * @postcondition
+     *   object remains as is; the list of cipher texts (one per block, in message order) is returned
+     * @return
+     *  a list of strings identical to the one returned by encryptBlocks(message)
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being the parallelism of pool]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public List<String> encryptBlocks(String message, ForkJoinPool pool){
+        return toStrings(encryptBytes(encode(message), pool));
+    }
+
+    /**
+     * Method used to encrypt a message of any length in block mode
+     * using a ForkJoinPool of the given parallelism, which is shut down afterwards
+     * @return
+     *  a list of strings identical to the one returned by encryptBlocks(message)
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being parallelism]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public List<String> encryptBlocks(String message, int parallelism){
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try{
+            return encryptBlocks(message, pool);
         }
+        finally{
+            pool.shutdown();
+        }
+    }
 
-        StringBuilder decodedString = new StringBuilder();
-        int i=0, j=8;
-        while(i!=this.lengthOfBinaryMessage){
-            int ascii = convertBinaryToAscii(messageInBinary.substring(i, j));
-            decodedString.append((char) ascii);
-            i=j;
-            j+=8;
+    /**
+     * Method used to decrypt a list of cipher texts produced by encryptBlocks,
+     * spreading the blocks across the threads of pool
+     * @precondition
+     * cipherBlocks holds, in order, every block returned by encryptBlocks for this key
+     * @postcondition
+     *   object remains as is; plain text with the padding removed is returned
+     * @return
+     *  a string object containing the plain text
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being the parallelism of pool]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public String decryptBlocks(List<String> cipherBlocks, ForkJoinPool pool){
+        return new String(decryptBytes(toBigIntegers(cipherBlocks), pool), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method used to decrypt a list of cipher texts produced by encryptBlocks
+     * using a ForkJoinPool of the given parallelism, which is shut down afterwards
+     * @return
+     *  a string object containing the plain text
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being parallelism]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public String decryptBlocks(List<String> cipherBlocks, int parallelism){
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try{
+            return decryptBlocks(cipherBlocks, pool);
+        }
+        finally{
+            pool.shutdown();
         }
-        return decodedString.toString();
     }
 
     /**
-     * Helper function to convert a binary string to its corresponding ascii character
+     * Method used to encrypt a message of any length in block mode into the
+     * binary wire format of KnapsackCipherText instead of decimal strings
+     * @precondition
+     * the keys are generated
+     * @postcondition
+     *   object remains as is; the encoded cipher text is returned
+     * @return
+     *  a byte array holding the length prefixed cipher value of every block
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public byte[] encryptToBytes(String message){
+        return KnapsackCipherText.encode(encryptBytes(encode(message)));
+    }
+
+    /**
+     * Method used to decrypt a cipher text in the binary wire format produced by encryptToBytes
+     * @precondition
+     * cipherText is the unmodified output of encryptToBytes for this key
+     * @postcondition
+     *   object remains as is; plain text with the padding removed is returned
+     * @return
+     *  a string object containing the plain text
      **/
     /*
         Asymptotic Notations:
@@ -202,20 +710,223 @@ public class MerkleHellmanKnapsackCryptosystem {
             Big-Omega: Ω(n)
             Big-Theta: Θ(n)
      */
-    public int convertBinaryToAscii(String binary){
-        int asciiValue = 0;
-        int power =0;
-        //for every position in binary with 1, raise two to the power of its index and sum them up
-        for(int i=binary.length()-1; i>=0; i--){
-            if(binary.charAt(i) == '1')
-                asciiValue += Math.pow(2, power);
-            power++;
+    public String decrypt(byte[] cipherText){
+        List<BigInteger> cipherBlocks;
+        try{
+            cipherBlocks = KnapsackCipherText.decode(cipherText);
+        }
+        catch(IllegalArgumentException malformed){
+            //rejected before decryptBytes, which counts its own failures
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.DECRYPT);
+            throw malformed;
         }
-        return asciiValue;
+        return new String(decryptBytes(cipherBlocks), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method used to encrypt binary data of any size as it is written, see KnapsackOutputStream
+     * @precondition
+     * the keys are generated
+     * @return
+     *  an OutputStream encrypting into out, which must be closed to complete the cipher text
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public OutputStream encryptTo(OutputStream out){
+        return new KnapsackOutputStream(out, getPublicKey());
     }
 
     /**
-     * Helper function to get the coprime of a BigInteger
+     * Method used to decrypt the cipher text written by encryptTo as it is read, see KnapsackInputStream
+     * @precondition
+     * the keys are generated
+     * @return
+     *  an InputStream returning the data decrypted from in
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    public InputStream decryptFrom(InputStream in){
+        return new KnapsackInputStream(in, getPrivateKey());
+    }
+
+    /**
+     * Method used to encrypt a batch of short messages, each as encrypt(message) would.
+     * The public key is read once and every message is encoded into a single scratch
+     * buffer and encrypted with a single accumulator, both reused across the batch,
+     * see KnapsackPublicKey.encryptAll
+     * @precondition
+     * the keys are generated
+     * the UTF-8 encoding of every message should be shorter than getBlockSize() bytes
+     * @postcondition
+     *   object remains as is; the cipher texts are returned in the order of messages
+     * @return
+     *  a list of strings identical to calling encrypt on every message
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)   [m being the number of messages]
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    public List<String> encryptAll(Collection<String> messages){
+        KnapsackPublicKey key = getPublicKey();
+        long start = KnapsackMetrics.start();
+        try{
+            //a record is at most one byte shorter than a block
+            ByteBuffer scratch = ByteBuffer.allocate(key.getBlockSize() - 1);
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+            LimbAccumulator accumulator = key.newAccumulator();
+            List<String> cipherTexts = new ArrayList<String>(messages.size());
+            long bytes = 0;
+            for(String message: messages){
+                scratch.clear();
+                encode(encoder, message, scratch);
+                cipherTexts.add(key.encryptRecord(scratch.array(), scratch.position(), accumulator).toString());
+                bytes += scratch.position();
+            }
+            KnapsackMetrics.record(KnapsackMetrics.Operation.ENCRYPT, start, bytes);
+            return cipherTexts;
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.ENCRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Method used to decrypt a batch of cipher texts produced by encrypt or encryptAll,
+     * recovering every message in a single scratch block reused across the batch
+     * @precondition
+     * every cipher text is a single block encrypted with this key
+     * @postcondition
+     *   object remains as is; the plain texts are returned in the order of cipherTexts
+     * @return
+     *  a list of strings identical to calling decrypt on every cipher text
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m * n)   [m being the number of cipher texts]
+            Big-Omega: Ω(m * n)
+            Big-Theta: Θ(m * n)
+     */
+    public List<String> decryptAll(Collection<String> cipherTexts){
+        KnapsackPrivateKey key = getPrivateKey();
+        long start = KnapsackMetrics.start();
+        try{
+            byte[] scratch = new byte[key.getBlockSize()];
+            List<String> plainTexts = new ArrayList<String>(cipherTexts.size());
+            long bytes = 0;
+            for(String cipherText: cipherTexts){
+                int length = key.decryptRecord(new BigInteger(cipherText), scratch);
+                plainTexts.add(new String(scratch, 0, length, StandardCharsets.UTF_8));
+                bytes += length;
+            }
+            KnapsackMetrics.record(KnapsackMetrics.Operation.DECRYPT, start, bytes);
+            return plainTexts;
+        }
+        catch(RuntimeException failure){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.DECRYPT);
+            throw failure;
+        }
+    }
+
+    /**
+     * Method used to encrypt binary data of any length in block mode,
+     * see KnapsackPublicKey.encrypt
+     * @precondition
+     * the keys are generated
+     * @return
+     *  a list of BigIntegers, each holding the encrypted value of one block
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public List<BigInteger> encryptBytes(byte[] message){
+        return getPublicKey().encrypt(message);
+    }
+
+    /**
+     * Method used to encrypt binary data of any length in block mode,
+     * spreading the blocks across the threads of pool
+     * @return
+     *  a list of BigIntegers identical to the one returned by encryptBytes(message)
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being the parallelism of pool]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public List<BigInteger> encryptBytes(byte[] message, ForkJoinPool pool){
+        return getPublicKey().encrypt(message, pool);
+    }
+
+    /**
+     * Method used to decrypt the cipher values produced by encryptBytes,
+     * see KnapsackPrivateKey.decrypt
+     * @precondition
+     * cipherBlocks holds, in order, every block returned by encryptBytes for this key
+     * @return
+     *  a byte array containing the original data
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public byte[] decryptBytes(List<BigInteger> cipherBlocks){
+        return getPrivateKey().decrypt(cipherBlocks);
+    }
+
+    /**
+     * Method used to decrypt the cipher values produced by encryptBytes,
+     * spreading the blocks across the threads of pool
+     * @return
+     *  a byte array containing the original data
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n/p)   [p being the parallelism of pool]
+            Big-Omega: Ω(n/p)
+            Big-Theta: Θ(n/p)
+     */
+    public byte[] decryptBytes(List<BigInteger> cipherBlocks, ForkJoinPool pool){
+        return getPrivateKey().decrypt(cipherBlocks, pool);
+    }
+
+    /**
+     * Helper function to convert cipher values to their decimal strings
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static List<String> toStrings(List<BigInteger> cipherBlocks){
+        List<String> cipherTexts = new ArrayList<String>(cipherBlocks.size());
+        for(BigInteger cipherBlock: cipherBlocks)
+            cipherTexts.add(cipherBlock.toString());
+        return cipherTexts;
+    }
+
+    /**
+     * Helper function to encode message as UTF-8, counting a failed ENCRYPT with KnapsackMetrics
+     * as the message is rejected before it reaches the public key
+     * @return
+     *  the UTF-8 bytes of message, failing on an unpaired surrogate instead of replacing it with '?'
      **/
     /*
         Asymptotic Notations:
@@ -223,42 +934,45 @@ public class MerkleHellmanKnapsackCryptosystem {
             Big-Omega: Ω(n)
             Big-Theta: Θ(n)
      */
-    private BigInteger coprime(BigInteger q){
-        //coprime of a number falls in  range of (2, n/2)
-        BigInteger i = q.divide(BigInteger.valueOf(2));
-        while(i.compareTo(q)!=0){
-            //if the gcd comes out to be 1 -> i and q are coprime
-            if(gcd(i, q).compareTo(BigInteger.valueOf(1))==0)
-                return i;
-            i = i.add(BigInteger.valueOf(1));
+    private static byte[] encode(String message){
+        try{
+            ByteBuffer plainText = StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(message));
+            return Arrays.copyOf(plainText.array(), plainText.limit());
+        }
+        catch(CharacterCodingException unmappable){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.ENCRYPT);
+            throw new IllegalArgumentException("Message holds a character that cannot be encoded as UTF-8", unmappable);
         }
-        return null;
     }
 
     /**
-     * Helper function to recursively find out the gcd of two numbers
-     * @reference
-     *  This is a derivative work from my experience with a competitive programming
-     *  portal named leetcode (https://leetcode.com/) (orignal Author unknown,
-     *  was not copied or referenced during this assignment,
-     *  but I learned it from there)
+     * Helper function to encode message as UTF-8 into target, without allocating an array per message
+     * @postcondition
+     *   the position of target is moved past the encoded message
      **/
     /*
         Asymptotic Notations:
-            Big-O : O(log n)
-            Big-Omega: Ω(log n)
-            Big-Theta: Θ(log n)
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
      */
-    private BigInteger gcd(BigInteger a, BigInteger b){
-        //Break condition: until b has been fully decomposed to 0
-        if(b.compareTo(BigInteger.valueOf(0))==0)
-            return a;
-        return gcd(b, a.mod(b));
+    private static void encode(CharsetEncoder encoder, String message, ByteBuffer target){
+        CharBuffer characters = CharBuffer.wrap(message);
+        encoder.reset();
+        CoderResult result = encoder.encode(characters, target, true);
+        if(result.isUnderflow())
+            result = encoder.flush(target);
+        if(result.isOverflow())
+            throw new IllegalArgumentException("Message does not fit in a knapsack of " + target.capacity()
+                    + " bytes, use encryptBlocks instead");
+        if(result.isError())
+            throw new IllegalArgumentException("Message holds a character that cannot be encoded as UTF-8 at index "
+                    + characters.position());
     }
 
     /**
-     * Helper function to use greedy approach to find the positions in w
-     * that sum upto c_dash
+     * Helper function to parse decimal cipher texts back to cipher values, counting a failed
+     * DECRYPT with KnapsackMetrics as a malformed cipher text never reaches the private key
      **/
     /*
         Asymptotic Notations:
@@ -266,44 +980,34 @@ public class MerkleHellmanKnapsackCryptosystem {
             Big-Omega: Ω(n)
             Big-Theta: Θ(n)
      */
-    private List<Integer> greedyDecompose(BigInteger c_dash){
-        int tailIndex = this.lengthOfBinaryMessage-1;
-        List<Integer> result = new ArrayList<Integer>();
-        while(tailIndex>=0){
-            BigInteger wi = (BigInteger) ((ObjectNode) w.getObjectAt(tailIndex)).getData();
-            if(c_dash.compareTo(wi)>=0){
-                result.add(tailIndex);
-                c_dash = c_dash.subtract(wi);
-                if(c_dash.compareTo(BigInteger.valueOf(0))==0)
-                    return result;
-            }
-            tailIndex--;
+    private static List<BigInteger> toBigIntegers(List<String> cipherTexts){
+        List<BigInteger> cipherBlocks = new ArrayList<BigInteger>(cipherTexts.size());
+        try{
+            for(String cipherText: cipherTexts)
+                cipherBlocks.add(new BigInteger(cipherText));
+        }
+        catch(NumberFormatException malformed){
+            KnapsackMetrics.recordFailure(KnapsackMetrics.Operation.DECRYPT);
+            throw malformed;
         }
-        return result;
+        return cipherBlocks;
     }
 
     /**
      * Main function demonstrating program execution
      **/
     public static void main(String[] a) throws Exception{
+        //with arguments run the batch command line, e.g. encrypt --key keyFile --in inputFile --out outputFile
+        if(a.length > 0){
+            KnapsackBatch.main(a);
+            return;
+        }
         System.out.println("Hello and welcome!\n");
         System.out.println("This assignment was submitted by:\nName: Abhineet Chaudhary\nAndrewId: abhineec\nCourse: 95-771 A Fall 2023\n\n");
 
         //Driver Code
-        MerkleHellmanKnapsackCryptosystem  merkleHellmanKnapsackCryptosystem = new MerkleHellmanKnapsackCryptosystem();
-
-        //Creates a super increasing sequence of BigIntegers of power of 7
-        BigInteger prevSum = BigInteger.valueOf(1234567623);
-        int count =0;
-        while(count<641){
-            merkleHellmanKnapsackCryptosystem.addBigIntegerToW(prevSum);
-            //add a random value (~10^6) in w
-            int x = (int) (Math.random() * 1000000) +1;
-            BigInteger added = prevSum.add(BigInteger.valueOf(x));
-            prevSum = prevSum.add(added);
-            count++;
-        }
-        merkleHellmanKnapsackCryptosystem.generatePublicKeys();
+        //Creates a super increasing sequence of 641 BigIntegers and the public keys for it
+        MerkleHellmanKnapsackCryptosystem  merkleHellmanKnapsackCryptosystem = generateKeys(641);
 
         //User Interface
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
@@ -313,7 +1017,17 @@ public class MerkleHellmanKnapsackCryptosystem {
         userInput = userInput.trim();
         System.out.println();
         System.out.println("Clear Text:"+userInput);
-        System.out.println("Number of clear text bytes = "+userInput.length());
+        int clearTextBytes = userInput.getBytes(StandardCharsets.UTF_8).length;
+        System.out.println("Number of clear text bytes = "+clearTextBytes);
+        if(clearTextBytes >= merkleHellmanKnapsackCryptosystem.getBlockSize()){
+            //Message does not fit in one knapsack, fall back to block mode
+            List<String> cipherBlocks = merkleHellmanKnapsackCryptosystem.encryptBlocks(userInput);
+            System.out.println();
+            System.out.println(userInput+" is encrypted in "+cipherBlocks.size()+" blocks as "+cipherBlocks);
+            System.out.println();
+            System.out.println("Result of decryption: "+merkleHellmanKnapsackCryptosystem.decryptBlocks(cipherBlocks));
+            return;
+        }
         String cipherText = merkleHellmanKnapsackCryptosystem.encrypt(userInput);
         System.out.println();
         System.out.println(userInput+" is encrypted as "+cipherText);
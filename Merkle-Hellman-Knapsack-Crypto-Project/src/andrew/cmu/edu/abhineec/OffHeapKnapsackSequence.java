@@ -0,0 +1,249 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/******************************************************************************
+ * OffHeapKnapsackSequence is a KnapsackSequence held outside the Java heap, in a direct
+ * or memory mapped ByteBuffer. Every element takes the same number of 32 bit limbs,
+ * enough for the largest element, stored least significant limb first, so element i
+ * starts at byte i * limbsPerElement * 4. Encryption adds the limbs of the selected elements
+ * straight from the buffer into a LimbAccumulator and decryption compares and subtracts
+ * them straight from the buffer, hence a key of any size costs a handful of heap objects.
+ * get(index) still returns the element as a (new) BigInteger.
+ * The buffer is only read with absolute gets, so any number of threads may share it
+ ******************************************************************************/
+final class OffHeapKnapsackSequence implements KnapsackSequence {
+    private final ByteBuffer limbs;
+    private final int size;
+    private final int limbsPerElement;
+
+    private OffHeapKnapsackSequence(ByteBuffer limbs, int size, int limbsPerElement){
+        this.limbs = limbs;
+        this.size = size;
+        this.limbsPerElement = limbsPerElement;
+    }
+
+    /**
+     * Method used to copy the elements of sequence into a direct ByteBuffer
+     * @return
+     *   an OffHeapKnapsackSequence holding the elements of sequence
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)   [m being the limbs per element]
+            Big-Omega: Ω(n * m)
+            Big-Theta: Θ(n * m)
+     */
+    static OffHeapKnapsackSequence allocate(KnapsackSequence sequence){
+        int limbsPerElement = LimbAccumulator.limbsPerElement(sequence);
+        ByteBuffer limbs = ByteBuffer.allocateDirect(checkedCapacity(sequence.size(), limbsPerElement));
+        return fill(sequence, limbs, limbsPerElement);
+    }
+
+    /**
+     * Method used to copy the elements of sequence into file and map it into memory,
+     * so that the operating system pages the elements in and out as they are used
+     * @postcondition
+     *   file holds the fixed width elements, replacing any previous content
+     * @return
+     *   an OffHeapKnapsackSequence holding the elements of sequence
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)   [m being the limbs per element]
+            Big-Omega: Ω(n * m)
+            Big-Theta: Θ(n * m)
+     */
+    static OffHeapKnapsackSequence map(KnapsackSequence sequence, Path file) throws IOException {
+        int limbsPerElement = LimbAccumulator.limbsPerElement(sequence);
+        ByteBuffer limbs;
+        //the mapping stays valid after the channel is closed
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            limbs = channel.map(FileChannel.MapMode.READ_WRITE, 0, checkedCapacity(sequence.size(), limbsPerElement));
+        }
+        return fill(sequence, limbs, limbsPerElement);
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public int size(){
+        return size;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the limbs per element]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    @Override
+    public BigInteger get(int index){
+        byte[] magnitude = new byte[limbsPerElement * 4];
+        int base = index * limbsPerElement;
+        for(int j=0; j<limbsPerElement; j++){
+            int limb = limbs.getInt((base + j) * 4);
+            int at = magnitude.length - 4 * (j + 1);
+            magnitude[at] = (byte) (limb >>> 24);
+            magnitude[at + 1] = (byte) (limb >>> 16);
+            magnitude[at + 2] = (byte) (limb >>> 8);
+            magnitude[at + 3] = (byte) limb;
+        }
+        return new BigInteger(1, magnitude);
+    }
+
+    /**
+     * Returns the number of 32 bit limbs every element takes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(1)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)
+     */
+    @Override
+    public int limbsPerElement(){
+        return limbsPerElement;
+    }
+
+    /**
+     * Method used to add the element at index to accumulator, straight from the buffer
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)   [m being the limbs per element]
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    @Override
+    public void addTo(int index, LimbAccumulator accumulator){
+        accumulator.add(limbs, index * limbsPerElement * 4, limbsPerElement);
+    }
+
+    /**
+     * Method used to find the positions in the first lengthOfBinaryMessage elements that
+     * sum upto c_dash, the greedy decomposition of KnapsackPrivateKey done on the limbs
+     * of the buffer. The bit of every position found is set in message, counting bits
+     * from the most significant bit of message[offset]
+     * @precondition
+     *   the elements are super increasing, c_dash is not negative
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)   [m being the limbs per element]
+            Big-Omega: Ω(log n)
+            Big-Theta: Θ(n * m)
+     */
+    void greedyDecompose(BigInteger c_dash, int lengthOfBinaryMessage, byte[] message, int offset){
+        int[] remainder = LimbAccumulator.toLimbs(c_dash, Math.max(limbsPerElement, (c_dash.bitLength() + 31) / 32));
+        //the elements are increasing, so binary search the last element not above c_dash
+        int low = 0, high = lengthOfBinaryMessage;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(compareTo(remainder, middle) >= 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        for(int tailIndex=low-1; tailIndex>=0; tailIndex--){
+            if(compareTo(remainder, tailIndex) >= 0){
+                message[offset + (tailIndex >>> 3)] |= (byte) (0x80 >>> (tailIndex & 7));
+                if(subtract(remainder, tailIndex))
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Helper function comparing the unsigned value held by the limbs of remainder with the element at index
+     * @return
+     *   a negative number, zero or a positive number as remainder is less than, equal to or greater than the element
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(m)
+     */
+    private int compareTo(int[] remainder, int index){
+        for(int j=remainder.length-1; j>=limbsPerElement; j--){
+            if(remainder[j] != 0)
+                return 1;
+        }
+        int base = index * limbsPerElement;
+        for(int j=limbsPerElement-1; j>=0; j--){
+            int comparison = Integer.compareUnsigned(remainder[j], limbs.getInt((base + j) * 4));
+            if(comparison != 0)
+                return comparison;
+        }
+        return 0;
+    }
+
+    /**
+     * Helper function subtracting the element at index from remainder in place
+     * @precondition
+     *   remainder is not less than the element
+     * @return
+     *   true when remainder became zero
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(m)
+            Big-Omega: Ω(m)
+            Big-Theta: Θ(m)
+     */
+    private boolean subtract(int[] remainder, int index){
+        int base = index * limbsPerElement;
+        long borrow = 0;
+        boolean zero = true;
+        for(int j=0; j<remainder.length; j++){
+            long element = j < limbsPerElement ? limbs.getInt((base + j) * 4) & 0xFFFFFFFFL : 0;
+            long difference = (remainder[j] & 0xFFFFFFFFL) - element - borrow;
+            remainder[j] = (int) difference;
+            borrow = difference < 0 ? 1 : 0;
+            zero &= remainder[j] == 0;
+        }
+        return zero;
+    }
+
+    /**
+     * Helper function returning the bytes of a buffer of size elements, failing when they exceed a ByteBuffer
+     **/
+    private static int checkedCapacity(int size, int limbsPerElement){
+        long capacity = (long) size * limbsPerElement * 4;
+        if(capacity > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Knapsack of " + capacity + " bytes does not fit in a single buffer");
+        return (int) capacity;
+    }
+
+    /**
+     * Helper function writing the elements of sequence into limbs
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n * m)
+            Big-Omega: Ω(n * m)
+            Big-Theta: Θ(n * m)
+     */
+    private static OffHeapKnapsackSequence fill(KnapsackSequence sequence, ByteBuffer limbs, int limbsPerElement){
+        limbs.order(ByteOrder.LITTLE_ENDIAN);
+        for(int i=0; i<sequence.size(); i++){
+            int[] element = LimbAccumulator.toLimbs(sequence.get(i), limbsPerElement);
+            int base = i * limbsPerElement;
+            for(int j=0; j<limbsPerElement; j++)
+                limbs.putInt((base + j) * 4, element[j]);
+        }
+        return new OffHeapKnapsackSequence(limbs, sequence.size(), limbsPerElement);
+    }
+}
@@ -0,0 +1,41 @@
+package andrew.cmu.edu.abhineec;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/******************************************************************************
+ * RangeTask is a fork/join task running an action for every index in [from, to),
+ * halving the range until it holds a single index. The indices are chunks of work
+ * sized by the caller, e.g. the blocks of a table or the index ranges of a key
+ ******************************************************************************/
+final class RangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    //fork/join tasks are never serialized, and a lambda action need not be Serializable
+    private final transient IntConsumer action;
+
+    RangeTask(int from, int to, IntConsumer action){
+        this.from = from;
+        this.to = to;
+        this.action = action;
+    }
+
+    /*
+        Asymptotic Notations:
+            Big-O : O(k)   [k being the indices, besides the actions]
+            Big-Omega: Ω(k)
+            Big-Theta: Θ(k)
+     */
+    @Override
+    protected void compute(){
+        if(to - from <= 1){
+            if(from < to)
+                action.accept(from);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new RangeTask(from, middle, action), new RangeTask(middle, to, action));
+    }
+}
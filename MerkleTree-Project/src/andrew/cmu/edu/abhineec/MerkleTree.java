@@ -14,20 +14,22 @@ import java.util.Scanner;
 /******************************************************************************
  * MerkleTree builds a Merkle hash tree
  * as defined @ https://en.wikipedia.org/wiki/Merkle_tree
+ * Every level of the tree is held in an array, so the nodes paired while building
+ * a level are reached by index in constant time
  ******************************************************************************/
 public class MerkleTree {
 
-    List<SinglyLinkedList> merkletree;
+    List<String[]> merkletree;
     int countNodes;
 
     /**
      * Initialize an object of the MerkleTree
      * @postcondition
-     *   An object of MerkleTree is initialized with an empty List of SinglyLinkedList
+     *   An object of MerkleTree is initialized with an empty List of levels
      *   and countNodes=0
      **/
     public MerkleTree(){
-        this.merkletree = new ArrayList<SinglyLinkedList>();
+        this.merkletree = new ArrayList<String[]>();
         this.countNodes = 0;
     }
 
@@ -47,27 +49,27 @@ public class MerkleTree {
             Big-Theta: Θ(n)
      */
     public void buildMerkleTreeBase(File fileObject) throws NoSuchAlgorithmException, FileNotFoundException {
-        SinglyLinkedList base = new SinglyLinkedList();
-        SinglyLinkedList baseHash = new SinglyLinkedList();
+        List<String> lines = new ArrayList<String>();
+        List<String> hashes = new ArrayList<String>();
         String lastLine = "";
 
         Scanner myReader = new Scanner(fileObject);
         while (myReader.hasNextLine()) {
             String data = myReader.nextLine();
-            base.addAtEndNode(data);
-            baseHash.addAtEndNode(h(data));
+            lines.add(data);
+            hashes.add(h(data));
             countNodes++;
             lastLine = data;
         }
         myReader.close();
 
         if(countNodes%2!=0){
-            base.addAtEndNode(lastLine);
-            baseHash.addAtEndNode(h(lastLine));
+            lines.add(lastLine);
+            hashes.add(h(lastLine));
             countNodes++;
         }
-        this.merkletree.add(base);
-        this.merkletree.add(baseHash);
+        this.merkletree.add(lines.toArray(new String[0]));
+        this.merkletree.add(hashes.toArray(new String[0]));
     }
 
     /**
@@ -85,42 +87,134 @@ public class MerkleTree {
      **/
     /*
         Asymptotic Notations:
-            Big-O : O(n^2)
-            Big-Omega: Ω(n^2)
-            Big-Theta: Θ(n^2)
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
      */
     public String buildMerkleTree() throws Exception{
         if(merkletree.isEmpty())
             throw new Exception("Merkle tree base has not been initialized");
         //Continue building the tree until root is found
         while(countNodes>1) {
-            //head  holds the top-most list (level) in the Merkle tree
-            SinglyLinkedList head = merkletree.get(merkletree.size()-1);
-            SinglyLinkedList currentList = new SinglyLinkedList();
+            //head  holds the top-most level in the Merkle tree
+            String[] head = merkletree.get(merkletree.size()-1);
+            //half of head, plus room for the duplicated last hash when that half is odd (and not the root)
+            int levelSize = head.length / 2;
+            String[] currentLevel = new String[levelSize>1 && levelSize%2!=0 ? levelSize + 1 : levelSize];
             String hash = "";
             /*For each alternate element in head
                 get the string at this position and the position next to it
                 calculate the hash
-                add to list and decrement the countNodes by 1 (since we combined 2 nodes into 1 now)
+                add to level and decrement the countNodes by 1 (since we combined 2 nodes into 1 now)
              */
-            for (int i = 0; i < head.countNodes; i += 2) {
-                String firstString = (String) head.getObjectAt(i);
-                String lastString = (String) head.getObjectAt(i + 1);
-                hash = h(firstString + lastString);
-                currentList.addAtEndNode(hash);
+            for (int i = 0; i < head.length; i += 2) {
+                hash = h(head[i] + head[i + 1]);
+                currentLevel[i / 2] = hash;
                 countNodes --;
             }
-            //Balance the list if the number of elements in current level are odd
+            //Balance the level if the number of elements in current level are odd
             //Ignore countNodes=1 since it implies we have our Merkle root
             if(countNodes>1 && countNodes%2!=0){
-                currentList.addAtEndNode(hash);
+                currentLevel[levelSize] = hash;
                 countNodes++;
             }
-            merkletree.add(currentList);
+            merkletree.add(currentLevel);
+        }
+        //return the data held in the last level's first position
+        //which contains the Hash root for the data blocks, null when the file held no lines
+        String[] top = merkletree.get(merkletree.size()-1);
+        return top.length>0 ? top[0] : null;
+    }
+
+    /**
+     * Method to calculate the Merkle root of the lines of a file without building the tree.
+     * Lines are read one at a time and hashed into a stack holding at most one pending hash
+     * per level, i.e. at most log2(n) hashes, so memory stays constant whatever the size of the file.
+     * The root is the one buildMerkleTreeBase and buildMerkleTree compute: the lines are split
+     * by the same Scanner, the last line is duplicated when the number of lines is odd and
+     * the last hash of any higher level with an odd number (more than 1) of hashes is duplicated
+     * @param fileObject
+     * Reference to the file that contains the data block
+     * @return
+     *  Merkle root of the datablocks, null when the file holds no lines
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    public static String computeMerkleRoot(File fileObject) throws NoSuchAlgorithmException, FileNotFoundException {
+        //pending[level] holds the hash at that level still waiting for its right sibling, like the digits of a binary counter
+        String[] pending = new String[Long.SIZE];
+        long countLines = 0;
+        String lastLine = "";
+
+        Scanner myReader = new Scanner(fileObject);
+        while (myReader.hasNextLine()) {
+            lastLine = myReader.nextLine();
+            addToLevel(pending, 0, h(lastLine));
+            countLines++;
+        }
+        myReader.close();
+
+        if(countLines==0)
+            return null;
+        //Balance the data blocks, even a single line is paired with itself
+        if(countLines%2!=0)
+            addToLevel(pending, 0, h(lastLine));
+        //Every pending hash below the highest one is the last hash of a level holding an odd number
+        //(more than 1) of hashes, duplicate it from the lowest level upwards until only the root is left
+        int level = 0;
+        while(countPending(pending)>1){
+            while(pending[level]==null)
+                level++;
+            String hash = pending[level];
+            pending[level] = null;
+            addToLevel(pending, level + 1, h(hash + hash));
+        }
+        for(String root : pending){
+            if(root!=null)
+                return root;
+        }
+        return null;
+    }
+
+    /**
+     * Helper method adding a hash to the given level of the pending stack of computeMerkleRoot,
+     * combining it with the pending hash of every level it completes
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(log n)
+            Big-Omega: Ω(1)
+            Big-Theta: Θ(1)   [amortized]
+     */
+    private static void addToLevel(String[] pending, int level, String hash) throws NoSuchAlgorithmException {
+        while(pending[level]!=null){
+            hash = h(pending[level] + hash);
+            pending[level] = null;
+            level++;
         }
-        //return the data held in the last SinglyLinkedList's first position
-        //which contains the Hash root for the data blocks
-        return (String) merkletree.get(merkletree.size()-1).getObjectAt(0);
+        pending[level] = hash;
+    }
+
+    /**
+     * Helper method returning the number of hashes in the pending stack of computeMerkleRoot
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(log n)
+            Big-Omega: Ω(log n)
+            Big-Theta: Θ(log n)
+     */
+    private static int countPending(String[] pending){
+        int count = 0;
+        for(String hash : pending){
+            if(hash!=null)
+                count++;
+        }
+        return count;
     }
 
     /**
@@ -137,7 +231,7 @@ public class MerkleTree {
             Big-Theta: Θ(1)
      */
     public void reset(){
-        this.merkletree = new ArrayList<SinglyLinkedList>();
+        this.merkletree = new ArrayList<String[]>();
         this.countNodes = 0;
     }
 
@@ -180,8 +274,8 @@ public class MerkleTree {
             Big-Theta: Θ(n)
      */
     public void printMerkleTree(){
-        for(SinglyLinkedList curr : merkletree){
-            System.out.println(curr.toString());
+        for(String[] curr : merkletree){
+            System.out.println(levelToString(curr));
         }
     }
 
@@ -199,13 +293,31 @@ public class MerkleTree {
      */
     public void printMerkleTreeToFile() throws IOException {
         FileWriter myWriter = new FileWriter("log.txt");
-        for(SinglyLinkedList curr : merkletree){
-            myWriter.write(curr.toString());
+        for(String[] curr : merkletree){
+            myWriter.write(levelToString(curr));
             myWriter.write("\n\n");
         }
         myWriter.close();
     }
 
+    /**
+     * Helper method formatting a level the way SinglyLinkedList.toString does,
+     * every element followed by ", "
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static String levelToString(String[] level){
+        StringBuilder sb = new StringBuilder();
+        for(String node : level){
+            sb.append(node).append(", ");
+        }
+        return sb.toString();
+    }
+
     /**
      * Main function demonstrating program execution
      **/
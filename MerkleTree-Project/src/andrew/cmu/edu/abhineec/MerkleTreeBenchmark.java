@@ -0,0 +1,174 @@
+package andrew.cmu.edu.abhineec;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Scanner;
+
+/******************************************************************************
+ * MerkleTreeBenchmark measures building a MerkleTree from CrimeLatLonXY.csv and from synthetic
+ * files of upto a million lines, and compares it with the former SinglyLinkedList backed levels,
+ * where both nodes of every pair were reached through getObjectAt(index), and with the streaming
+ * MerkleTree.computeMerkleRoot. The former levels take quadratic time, so they are only measured
+ * on inputs of at most LINKED_LIST_MAX_LINES lines.
+ * Usage: java andrew.cmu.edu.abhineec.MerkleTreeBenchmark [maxSyntheticLines]
+ ******************************************************************************/
+public class MerkleTreeBenchmark {
+    private static final String CRIME_FILE = "CrimeLatLonXY.csv";
+    private static final int[] SYNTHETIC_LINES = {10000, 100000, 1000000};
+    private static final int LINKED_LIST_MAX_LINES = 30000;
+    private static final int WARMUP_ITERATIONS = 1;
+    private static final int MEASURED_ITERATIONS = 3;
+
+    /**
+     * Helper function writing a temporary file of lines random lines shaped like the
+     * records of CrimeLatLonXY.csv
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static File syntheticFile(int lines, Random random) throws Exception {
+        File file = File.createTempFile("merkle-" + lines + "-", ".csv");
+        file.deleteOnExit();
+        try(BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)){
+            for(int i=0; i<lines; i++){
+                writer.write(String.format("%d,%d,%.6f,%.6f,%d", 1300000 + random.nextInt(100000),
+                        420000 + random.nextInt(30000), 40 + random.nextDouble(), -80 + random.nextDouble(), i));
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Merkle root as it was built with every level held in a SinglyLinkedList,
+     * walking the list from its head for both nodes of every pair
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n^2)
+            Big-Omega: Ω(n^2)
+            Big-Theta: Θ(n^2)
+     */
+    private static String linkedListRoot(File fileObject) throws Exception {
+        SinglyLinkedList head = new SinglyLinkedList();
+        String lastLine = "";
+        int countNodes = 0;
+        Scanner myReader = new Scanner(fileObject);
+        while (myReader.hasNextLine()) {
+            lastLine = myReader.nextLine();
+            head.addAtEndNode(MerkleTree.h(lastLine));
+            countNodes++;
+        }
+        myReader.close();
+        if(countNodes%2!=0){
+            head.addAtEndNode(MerkleTree.h(lastLine));
+            countNodes++;
+        }
+        while(countNodes>1){
+            SinglyLinkedList currentList = new SinglyLinkedList();
+            String hash = "";
+            for (int i = 0; i < head.countNodes; i += 2) {
+                hash = MerkleTree.h((String) head.getObjectAt(i) + head.getObjectAt(i + 1));
+                currentList.addAtEndNode(hash);
+                countNodes--;
+            }
+            if(countNodes>1 && countNodes%2!=0){
+                currentList.addAtEndNode(hash);
+                countNodes++;
+            }
+            head = currentList;
+        }
+        return (String) head.getObjectAt(0);
+    }
+
+    /**
+     * Helper function building the whole tree of a file with buildMerkleTreeBase and buildMerkleTree
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(n)
+            Big-Omega: Ω(n)
+            Big-Theta: Θ(n)
+     */
+    private static String arrayRoot(File fileObject) throws Exception {
+        MerkleTree tree = new MerkleTree();
+        tree.buildMerkleTreeBase(fileObject);
+        return tree.buildMerkleTree();
+    }
+
+    /**
+     * Loads a file and computes its Merkle root, used to time the three ways of doing so
+     **/
+    private interface RootFunction {
+        String root(File fileObject) throws Exception;
+    }
+
+    /**
+     * Helper function timing rootFunction on fileObject
+     * @return
+     *   the mean milliseconds of the measured iterations, after checking every root equals expectedRoot
+     **/
+    /*
+        Asymptotic Notations:
+            Big-O : O(f(n))   [f being the cost of rootFunction]
+            Big-Omega: Ω(f(n))
+            Big-Theta: Θ(f(n))
+     */
+    private static double meanMillis(RootFunction rootFunction, File fileObject, String expectedRoot) throws Exception {
+        for(int i=0; i<WARMUP_ITERATIONS; i++)
+            check(rootFunction.root(fileObject), expectedRoot);
+        long start = System.nanoTime();
+        for(int i=0; i<MEASURED_ITERATIONS; i++)
+            check(rootFunction.root(fileObject), expectedRoot);
+        return (System.nanoTime() - start) / 1e6 / MEASURED_ITERATIONS;
+    }
+
+    /**
+     * Helper function failing the benchmark when a root differs from the expected one
+     **/
+    private static void check(String root, String expectedRoot){
+        if(!root.equals(expectedRoot))
+            throw new IllegalStateException("Merkle root " + root + " differs from " + expectedRoot);
+    }
+
+    /**
+     * Helper function printing a row of the report for fileObject
+     **/
+    private static void report(String name, File fileObject, int lines) throws Exception {
+        String root = arrayRoot(fileObject);
+        double arrayMs = meanMillis(MerkleTreeBenchmark::arrayRoot, fileObject, root);
+        double streamingMs = meanMillis(MerkleTree::computeMerkleRoot, fileObject, root);
+        String linkedListMs = lines <= LINKED_LIST_MAX_LINES
+                ? String.format("%.1f", meanMillis(MerkleTreeBenchmark::linkedListRoot, fileObject, root))
+                : "-";
+        System.out.printf("%s, %d, %.1f, %.1f, %s, %s%n", name, lines, arrayMs, streamingMs, linkedListMs, root);
+    }
+
+    /**
+     * Main function running the benchmark from the MerkleTree-Project directory
+     **/
+    public static void main(String[] args) throws Exception {
+        int maxSyntheticLines = args.length > 0 ? Integer.parseInt(args[0]) : Integer.MAX_VALUE;
+        File crimeFile = new File(System.getProperty("user.dir") + "/resources/" + CRIME_FILE);
+        Random random = new Random(2023);
+
+        System.out.println("input, lines, arrayTreeMs, streamingRootMs, linkedListTreeMs, merkleRoot");
+        int crimeLines = 0;
+        Scanner counter = new Scanner(crimeFile);
+        for(; counter.hasNextLine(); crimeLines++)
+            counter.nextLine();
+        counter.close();
+        report(CRIME_FILE, crimeFile, crimeLines);
+        for(int lines : SYNTHETIC_LINES){
+            if(lines > maxSyntheticLines)
+                break;
+            report("synthetic", syntheticFile(lines, random), lines);
+        }
+    }
+}